@@ -10,15 +10,40 @@ import android.util.Log;
 import androidx.preference.PreferenceManager;
 
 import com.example.smartscales.data.database.AppDatabase;
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
 import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
 import com.example.smartscales.domain.interfaces.ScaleInterface;
+import com.example.smartscales.domain.services.FaceDetectionService;
 import com.example.smartscales.domain.services.FaceRecognitionService;
 import com.example.smartscales.domain.services.MockScaleService;
+import com.example.smartscales.domain.services.TFLiteFaceRecognition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class App extends Application {
+    public static final String PREF_FACE_ENGINE = "face_recognition_engine";
+    public static final String FACE_ENGINE_TFLITE = "tflite";
+    public static final String FACE_ENGINE_PLACEHOLDER = "placeholder"; // Без модели, для отладки UI
     private static App instance;
+    private final ExecutorService initExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private AppDatabase database;
+    private FaceDetectionInterface faceDetection;
     private FaceRecognitionInterface faceRecognition;
+    private String faceRecognitionError;
+    private final List<FaceRecognitionReadyCallback> faceRecognitionWaiters = new ArrayList<>();
+
+    /**
+     * Движок распознавания создаётся в фоне; колбэк вызывается в главном потоке
+     */
+    public interface FaceRecognitionReadyCallback {
+        void onReady(FaceRecognitionInterface faceRecognition);
+        void onError(String error);
+    }
     private ScaleInterface scaleService;
     private SharedPreferences preferences;
 
@@ -36,10 +61,30 @@ public class App extends Application {
         return database;
     }
 
+    public FaceDetectionInterface getFaceDetection() {
+        return faceDetection;
+    }
+
+    /**
+     * null, пока движок создаётся в фоне или если модель не загрузилась — см. whenFaceRecognitionReady
+     */
     public FaceRecognitionInterface getFaceRecognition() {
         return faceRecognition;
     }
 
+    /**
+     * Вызывает колбэк, когда движок готов (сразу, если уже готов); вызывать из главного потока
+     */
+    public void whenFaceRecognitionReady(FaceRecognitionReadyCallback callback) {
+        if (faceRecognition != null) {
+            callback.onReady(faceRecognition);
+        } else if (faceRecognitionError != null) {
+            callback.onError(faceRecognitionError);
+        } else {
+            faceRecognitionWaiters.add(callback);
+        }
+    }
+
     public ScaleInterface getScaleService() {
         return scaleService;
     }
@@ -68,6 +113,8 @@ public class App extends Application {
 
             Thread.sleep(500);
 
+            initFaceDetection();
+
             initFaceRecognition();
 
             initScaleService();
@@ -79,15 +126,59 @@ public class App extends Application {
         }
     }
 
+    /**
+     * Детекторы ML Kit — одни на процесс для всех экранов и сервисов; модели грузятся
+     * в фоне сразу при старте, а не на первом кадре камеры
+     */
+    private void initFaceDetection() {
+        faceDetection = new FaceDetectionService();
+        faceDetection.warmUp();
+        Log.d("App", "Сервис детекции лиц создан, прогрев в фоне");
+    }
+
+    /**
+     * Загрузка модели, выбор делегата и проверка тензоров — в фоне, не в onCreate.
+     * Заглушка без модели — только по явной настройке; отсутствие модели — ошибка, а не заглушка
+     */
     private void initFaceRecognition() {
         Log.d("App", "Инициализация FaceRecognitionService...");
 
-        faceRecognition = new FaceRecognitionService(this);
-
-        faceRecognition.initialize(this);
+        String engine = preferences.getString(PREF_FACE_ENGINE, FACE_ENGINE_TFLITE);
+        if (FACE_ENGINE_PLACEHOLDER.equals(engine)) {
+            Log.w("App", "Распознавание без модели (заглушка): только для отладки UI");
+            onFaceRecognitionCreated(new FaceRecognitionService(this, faceDetection), null);
+            return;
+        }
+        if (!FACE_ENGINE_TFLITE.equals(engine)) {
+            Log.w("App", "Неизвестный движок распознавания " + engine + ", используется " + FACE_ENGINE_TFLITE);
+        }
+        initExecutor.execute(() -> {
+            try {
+                FaceRecognitionInterface created = TFLiteFaceRecognition.create(this, faceDetection);
+                mainHandler.post(() -> onFaceRecognitionCreated(created, null));
+            } catch (IOException | RuntimeException e) {
+                Log.e("App", "Модель TFLite не загружена: " + e.getMessage(), e);
+                String error = "Модель распознавания лиц не загружена: " + e.getMessage();
+                mainHandler.post(() -> onFaceRecognitionCreated(null, error));
+            }
+        });
+    }
 
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            Log.d("App", "FaceRecognitionService инициализирован после задержки");
-        }, 2000);
+    private void onFaceRecognitionCreated(FaceRecognitionInterface created, String error) {
+        faceRecognition = created;
+        faceRecognitionError = error;
+        if (created != null) {
+            created.initialize(this);
+            Log.d("App", "FaceRecognitionService инициализирован");
+        }
+        List<FaceRecognitionReadyCallback> waiters = new ArrayList<>(faceRecognitionWaiters);
+        faceRecognitionWaiters.clear();
+        for (FaceRecognitionReadyCallback callback : waiters) {
+            if (created != null) {
+                callback.onReady(created);
+            } else {
+                callback.onError(error);
+            }
+        }
     }
 }
\ No newline at end of file
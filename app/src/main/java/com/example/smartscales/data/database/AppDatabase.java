@@ -1,10 +1,14 @@
 package com.example.smartscales.data.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
+import android.database.Cursor;
 import com.example.smartscales.data.database.dao.UserDao;
 import com.example.smartscales.data.database.dao.WeightMeasurementDao;
 import com.example.smartscales.data.models.User;
@@ -12,7 +16,7 @@ import com.example.smartscales.data.models.WeightMeasurement;
 
 @Database(
         entities = {User.class, WeightMeasurement.class},
-        version = 2,
+        version = 3,
         exportSchema = false
 )
 @TypeConverters({Converters.class})
@@ -20,8 +24,59 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract UserDao userDao();
     public abstract WeightMeasurementDao weightMeasurementDao();
 
+    public static final String DATABASE_NAME = "smart_scales.db";
+
+    // Счётчик версий users вне самой таблицы: MAX(version) после удаления строки
+    // с наибольшей версией выдал бы уже использованный номер, и дельта его пропустила бы
+    private static final String CREATE_USERS_VERSION_SEQUENCE =
+            "CREATE TABLE IF NOT EXISTS users_version_seq " +
+            "(id INTEGER PRIMARY KEY CHECK (id = 0), value INTEGER NOT NULL)";
+    private static final String INIT_USERS_VERSION_SEQUENCE =
+            "INSERT OR IGNORE INTO users_version_seq (id, value) " +
+            "SELECT 0, IFNULL(MAX(version), 0) FROM users";
+    private static final String DROP_USERS_VERSION_SEQUENCE =
+            "DROP TABLE IF EXISTS users_version_seq";
+    private static final String SELECT_USERS_VERSION =
+            "SELECT IFNULL((SELECT value FROM users_version_seq WHERE id = 0), 0)";
+    private static final String NEXT_USERS_VERSION =
+            "UPDATE users_version_seq SET value = value + 1 WHERE id = 0; " +
+            "UPDATE users SET version = (SELECT value FROM users_version_seq WHERE id = 0) WHERE id = NEW.id; ";
+
+    // Триггеры присваивают строке новую версию при вставке и при изменении эмбеддинга/активности
+    private static final String CREATE_USERS_VERSION_INSERT_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS users_version_insert AFTER INSERT ON users " +
+            "BEGIN " + NEXT_USERS_VERSION + "END";
+    private static final String CREATE_USERS_VERSION_UPDATE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS users_version_update AFTER UPDATE OF faceEmbedding, isActive ON users " +
+            "BEGIN " + NEXT_USERS_VERSION + "END";
+
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE users ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+            createVersionTriggers(db);
+        }
+    };
+
+    private static void createVersionTriggers(SupportSQLiteDatabase db) {
+        db.execSQL(CREATE_USERS_VERSION_SEQUENCE);
+        db.execSQL(INIT_USERS_VERSION_SEQUENCE);
+        db.execSQL(CREATE_USERS_VERSION_INSERT_TRIGGER);
+        db.execSQL(CREATE_USERS_VERSION_UPDATE_TRIGGER);
+    }
+
     private static volatile AppDatabase INSTANCE;
 
+    /**
+     * Последняя выданная версия users. Все строки имеют версию не выше неё, и удаление
+     * строк её не уменьшает — в отличие от MAX(version)
+     */
+    public long getUsersVersion() {
+        try (Cursor cursor = query(SELECT_USERS_VERSION, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
     public static AppDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
@@ -29,8 +84,24 @@ public abstract class AppDatabase extends RoomDatabase {
                     INSTANCE = Room.databaseBuilder(
                                     context.getApplicationContext(),
                                     AppDatabase.class,
-                                    "smart_scales.db"
+                                    DATABASE_NAME
                             )
+                            .addMigrations(MIGRATION_2_3)
+                            .addCallback(new Callback() {
+                                // Также покрывает новую установку и fallbackToDestructiveMigration
+                                @Override
+                                public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                                    createVersionTriggers(db);
+                                }
+
+                                // Room пересоздаёт только таблицы сущностей. Без сброса счётчик
+                                // продолжился бы со старого значения, и снимок галереи от старой
+                                // базы не распознался бы как более новый, чем база
+                                @Override
+                                public void onDestructiveMigration(@NonNull SupportSQLiteDatabase db) {
+                                    db.execSQL(DROP_USERS_VERSION_SEQUENCE);
+                                }
+                            })
                             .fallbackToDestructiveMigration()
                             .build();
                 }
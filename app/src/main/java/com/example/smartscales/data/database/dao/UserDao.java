@@ -1,5 +1,7 @@
 package com.example.smartscales.data.database.dao;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Delete;
@@ -8,6 +10,7 @@ import androidx.room.Query;
 import androidx.room.Update;
 
 import com.example.smartscales.data.models.User;
+import com.example.smartscales.data.models.UserEmbeddingChange;
 
 import java.util.List;
 
@@ -46,6 +49,25 @@ public interface UserDao {
     @Query("SELECT * FROM users WHERE id = :id")
     LiveData<User> getUserByIdLive(int id);
 
+    @Query("SELECT faceEmbedding FROM users WHERE isActive = 1 AND faceEmbedding IS NOT NULL")
+    List<byte[]> getActiveFaceEmbeddings();
+
+    // Лента изменений для синхронизации галереи эмбеддингов
+    @Query("SELECT id, faceEmbedding, isActive, version FROM users WHERE version > :sinceVersion ORDER BY version")
+    List<UserEmbeddingChange> getEmbeddingChangesSince(long sinceVersion);
+
+    // Потоковое чтение для полной загрузки галереи: только id и эмбеддинг, без объектов User
+    @Query("SELECT id, faceEmbedding FROM users WHERE isActive = 1 AND faceEmbedding IS NOT NULL")
+    Cursor getActiveEmbeddingsCursor();
+
+    @Query("SELECT id FROM users WHERE isActive = 1 AND faceEmbedding IS NOT NULL")
+    List<Integer> getActiveEmbeddingUserIds();
+
+    // Длины блобов одной размерности в двух форматах, см. EmbeddingCodec.blobLengths
+    @Query("SELECT COUNT(*) FROM users WHERE isActive = 1 AND faceEmbedding IS NOT NULL " +
+            "AND length(faceEmbedding) IN (:floatLength, :int8Length)")
+    int getActiveEmbeddingCount(int floatLength, int int8Length);
+
 
 
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.smartscales.data.models;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
@@ -22,6 +23,9 @@ public class User {
     public float targetWeight;
     public float initialWeight;
 
+    // Монотонная версия строки, выставляется триггерами БД (см. AppDatabase)
+    @ColumnInfo(defaultValue = "0")
+    public long version;
 
     public User() {
         this.createdDate = new Date();
@@ -94,4 +98,12 @@ public class User {
     public void setTargetWeight(float targetWeight) {
         this.targetWeight = targetWeight;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
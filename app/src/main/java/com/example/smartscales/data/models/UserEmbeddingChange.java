@@ -0,0 +1,11 @@
+package com.example.smartscales.data.models;
+
+/**
+ * Проекция users для ленты изменений галереи: только id, эмбеддинг, активность и версия.
+ */
+public class UserEmbeddingChange {
+    public int id;
+    public byte[] faceEmbedding;
+    public boolean isActive;
+    public long version;
+}
@@ -176,12 +176,12 @@ public class UserRepository {
 
     // ========== Face Recognition methods ==========
 
-    public void addUserWithFace(String name, Bitmap faceImage, float initialWeight, float targetWeight,
+    public void addUserWithFace(String name, List<Bitmap> faceImages, float initialWeight, float targetWeight,
                                 FaceRecognitionInterface faceRecognition,
                                 UserRegistrationCallback callback) {
         executorService.execute(() -> {
             try {
-                faceRecognition.registerUser(name, faceImage,
+                faceRecognition.registerUser(name, faceImages,
                         new FaceRecognitionInterface.FaceRegistrationCallback() {
                             @Override
                             public void onSuccess(User user) {
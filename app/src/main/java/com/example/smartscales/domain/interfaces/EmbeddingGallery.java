@@ -0,0 +1,65 @@
+package com.example.smartscales.domain.interfaces;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+public interface EmbeddingGallery {
+
+    /**
+     * Добавляет или заменяет эмбеддинг пользователя
+     */
+    void put(int userId, float[] embedding);
+
+    /**
+     * Удаляет эмбеддинг пользователя
+     */
+    boolean remove(int userId);
+
+    void clear();
+
+    int size();
+
+    int getDimension();
+
+    boolean contains(int userId);
+
+    /**
+     * Копия id пользователей, присутствующих в галерее
+     */
+    int[] getUserIds();
+
+    /**
+     * Содержимое галереи для снимка на диск: нормализованные векторы по строкам
+     * (для сжатых галерей — восстановленные из кодов)
+     */
+    Rows exportRows();
+
+    /**
+     * Заменяет содержимое галереи строками целиком; индекс, если нужен, строится один раз.
+     * Массивы rows переходят во владение галереи, вызывающий их больше не меняет
+     */
+    void loadRows(Rows rows);
+
+    /**
+     * K ближайших пользователей по косинусному сходству, по убыванию
+     */
+    SearchResult searchNearest(float[] query, int k);
+
+    /**
+     * Упакованные строки галереи: vectors[i * dimension ..] принадлежит userIds[i]
+     */
+    final class Rows {
+        public final int dimension;
+        public final int[] userIds;
+        public final float[] vectors;
+
+        public Rows(int dimension, int[] userIds, float[] vectors) {
+            this.dimension = dimension;
+            this.userIds = userIds;
+            this.vectors = vectors;
+        }
+
+        public int size() {
+            return userIds.length;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.smartscales.domain.interfaces;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+
+import java.util.List;
+
+public interface FaceDetectionInterface {
+
+    /**
+     * Уровень каскада детекции
+     */
+    enum Tier {
+        PRESENCE,  // Быстрый, с трекингом, без точек — каждый кадр камеры
+        LANDMARKS  // Точный, с точками — лица, которые пойдут в эмбеддинг
+    }
+
+    /**
+     * Загружает модели детекторов заранее, в фоне, чтобы первый кадр не ждал загрузки
+     */
+    void warmUp();
+
+    /**
+     * Асинхронная детекция; колбэк вызывается в главном потоке
+     */
+    void detectFaces(InputImage image, Tier tier, FaceDetectionCallback callback);
+
+    /**
+     * Синхронная детекция — для рабочих потоков (конвейер камеры, executor сервиса).
+     * Не вызывать из главного потока
+     */
+    List<Face> detectFacesBlocking(InputImage image, Tier tier) throws Exception;
+
+    /**
+     * Освобождает нативные детекторы; после этого детекция недоступна
+     */
+    void close();
+
+    interface FaceDetectionCallback {
+        void onFacesDetected(List<Face> faces);
+        void onError(String error);
+    }
+}
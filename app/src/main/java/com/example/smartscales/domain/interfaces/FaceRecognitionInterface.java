@@ -4,6 +4,8 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import com.example.smartscales.data.models.User;
 
+import java.util.List;
+
 public interface FaceRecognitionInterface {
 
     /**
@@ -16,11 +18,28 @@ public interface FaceRecognitionInterface {
      */
     void registerUser(String name, Bitmap faceImage, FaceRegistrationCallback callback);
 
+    /**
+     * Регистрация по нескольким фото одного человека: эмбеддинги считаются одним батчем
+     * и сводятся в один устойчивый к неудачным кадрам
+     */
+    void registerUser(String name, List<Bitmap> faceImages, FaceRegistrationCallback callback);
+
     /**
      * Асинхронное распознавание пользователя
      */
     void recognizeUser(Bitmap faceImage, FaceRecognitionCallback callback);
 
+    /**
+     * Синхронный расчёт эмбеддингов уже вырезанных лиц одним батчем — для конвейера,
+     * где эмбеддинг и поиск идут отдельными стадиями. Не вызывать из главного потока
+     */
+    float[][] embedFaces(List<Bitmap> faceImages);
+
+    /**
+     * Поиск K ближайших пользователей к эмбеддингу запроса за один проход по галерее
+     */
+    SearchResult searchNearest(float[] query, int k);
+
     /**
      * Проверяет, доступен ли сервис распознавания
      */
@@ -31,6 +50,50 @@ public interface FaceRecognitionInterface {
      */
     void clearCache();
 
+    /**
+     * Результат поиска ближайших соседей: кандидаты по убыванию сходства
+     */
+    final class SearchResult {
+        public static final SearchResult EMPTY = new SearchResult(new int[0], new float[0]);
+
+        private final int[] userIds;
+        private final float[] similarities;
+
+        public SearchResult(int[] userIds, float[] similarities) {
+            this.userIds = userIds;
+            this.similarities = similarities;
+        }
+
+        public int size() {
+            return userIds.length;
+        }
+
+        public boolean isEmpty() {
+            return userIds.length == 0;
+        }
+
+        public int getUserId(int rank) {
+            return userIds[rank];
+        }
+
+        public float getSimilarity(int rank) {
+            return similarities[rank];
+        }
+
+        /**
+         * Отрыв лучшего кандидата от второго; при единственном кандидате — его сходство
+         */
+        public float getMargin() {
+            if (userIds.length == 0) {
+                return 0;
+            }
+            if (userIds.length == 1) {
+                return similarities[0];
+            }
+            return similarities[0] - similarities[1];
+        }
+    }
+
     /**
      * Колбэк для регистрации пользователя
      */
@@ -48,4 +111,5 @@ public interface FaceRecognitionInterface {
         void onUnknownFace();
         void onError(String error);
     }
+
 }
\ No newline at end of file
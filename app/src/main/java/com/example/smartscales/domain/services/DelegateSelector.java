@@ -0,0 +1,187 @@
+package com.example.smartscales.domain.services;
+
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Выбор делегата и числа потоков для интерпретаторов модели.
+ *
+ * При первом запуске (и после смены модели или прошивки) модель прогоняется
+ * на CPU с 1/2/4 потоками, на XNNPACK и, где есть, на NNAPI; самая быстрая
+ * конфигурация сохраняется в настройках. Замер идёт до создания пула, в потоке
+ * инициализации движка: он не делит ядра с прогревом и распознаванием, и уже первый
+ * запуск работает на выбранной конфигурации. GPU не требуется.
+ */
+class DelegateSelector {
+    private static final String TAG = "DelegateSelector";
+
+    static final String PREF_INTERPRETER_CONFIG = "face_interpreter_config";
+    private static final String PREF_BENCHMARK_KEY = "face_interpreter_benchmark_key";
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4};
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    static final Config DEFAULT = new Config(Config.XNNPACK, 2);
+
+    /**
+     * Делегат и потоки одного интерпретатора
+     */
+    static final class Config {
+        static final String CPU = "cpu";
+        static final String XNNPACK = "xnnpack";
+        static final String NNAPI = "nnapi";
+
+        final String delegate;
+        final int threads;
+
+        Config(String delegate, int threads) {
+            this.delegate = delegate;
+            this.threads = threads;
+        }
+
+        void applyTo(Interpreter.Options options) {
+            options.setNumThreads(threads);
+            options.setUseXNNPACK(XNNPACK.equals(delegate));
+            if (NNAPI.equals(delegate)) {
+                options.setUseNNAPI(true);
+            }
+        }
+
+        String encode() {
+            return delegate + ":" + threads;
+        }
+
+        /**
+         * @return null для пустой или повреждённой записи
+         */
+        static Config decode(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split(":");
+            if (parts.length != 2 || !Arrays.asList(CPU, XNNPACK, NNAPI).contains(parts[0])) {
+                return null;
+            }
+            try {
+                int threads = Integer.parseInt(parts[1]);
+                return threads > 0 ? new Config(parts[0], threads) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return encode();
+        }
+    }
+
+    private DelegateSelector() {
+    }
+
+    /**
+     * Сохранённая конфигурация для этой модели; если её нет — замер здесь же.
+     * Блокирует на время замера (до секунд) — не вызывать из главного потока
+     */
+    static Config select(SharedPreferences preferences, MappedByteBuffer model) {
+        String key = benchmarkKey(model);
+        Config stored = Config.decode(preferences.getString(PREF_INTERPRETER_CONFIG, null));
+        if (stored != null && key.equals(preferences.getString(PREF_BENCHMARK_KEY, null))) {
+            return stored;
+        }
+
+        Config best = benchmark(model);
+        preferences.edit()
+                .putString(PREF_INTERPRETER_CONFIG, best.encode())
+                .putString(PREF_BENCHMARK_KEY, key)
+                .apply();
+        return best;
+    }
+
+    /**
+     * Замер всех кандидатов; кандидат, который не создался или упал, пропускается
+     */
+    static Config benchmark(MappedByteBuffer model) {
+        Config best = DEFAULT;
+        long bestTime = Long.MAX_VALUE;
+        for (Config config : candidates(Runtime.getRuntime().availableProcessors())) {
+            try {
+                long time = measure(model, config);
+                Log.d(TAG, "Конфигурация " + config + ": " + time / 1000 + " мкс");
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = config;
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Конфигурация " + config + " недоступна: " + e.getMessage());
+            }
+        }
+        Log.i(TAG, "Выбрана конфигурация интерпретатора: " + best);
+        return best;
+    }
+
+    static List<Config> candidates(int cores) {
+        List<Config> candidates = new ArrayList<>();
+        for (int threads : THREAD_COUNTS) {
+            if (threads > 1 && threads > cores) {
+                break;
+            }
+            candidates.add(new Config(Config.CPU, threads));
+            candidates.add(new Config(Config.XNNPACK, threads));
+        }
+        // NNAPI до Android 8.1 отсутствует, а на ранних версиях часто медленнее CPU — решит замер
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            candidates.add(new Config(Config.NNAPI, 1));
+        }
+        return candidates;
+    }
+
+    /**
+     * Медиана TIMED_RUNS прогонов на нулевом входе, в наносекундах
+     */
+    private static long measure(MappedByteBuffer model, Config config) {
+        Interpreter.Options options = new Interpreter.Options();
+        config.applyTo(options);
+        Interpreter interpreter = new Interpreter(model, options);
+        try {
+            // Буферы по размеру тензоров: замер не зависит от типа входа (float или int8)
+            ByteBuffer input = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            ByteBuffer output = ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                output.rewind();
+                interpreter.run(input, output);
+            }
+            long[] times = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                output.rewind();
+                long start = System.nanoTime();
+                interpreter.run(input, output);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            return times[TIMED_RUNS / 2];
+        } finally {
+            interpreter.close();
+        }
+    }
+
+    /**
+     * Замер действителен для той же модели на той же прошивке (драйверы NNAPI меняются с ней)
+     */
+    private static String benchmarkKey(MappedByteBuffer model) {
+        return model.capacity() + "@" + Build.FINGERPRINT;
+    }
+}
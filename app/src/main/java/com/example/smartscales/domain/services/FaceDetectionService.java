@@ -0,0 +1,136 @@
+package com.example.smartscales.domain.services;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Общий на приложение сервис детекции лиц ML Kit — двухуровневый каскад.
+ *
+ * Быстрый детектор без точек и классификации отвечает на вопрос «есть ли лицо и чей это трек»
+ * на каждом кадре камеры. Точный детектор с точками запускается только там, где лицо
+ * действительно пойдёт в эмбеддинг: на вырезанной области кадра и на фото регистрации.
+ * Каждый детектор создаётся один раз на процесс; владелец — App, он же прогревает их при старте.
+ */
+public class FaceDetectionService implements FaceDetectionInterface {
+    private static final String TAG = "FaceDetectionService";
+    private static final int WARM_UP_IMAGE_SIZE = 64; // Пустой кадр: достаточно, чтобы загрузить модель
+
+    private Thread warmUpThread; // Одноразовый: после прогрева поток завершается
+    private FaceDetector presenceDetector;
+    private FaceDetector landmarkDetector;
+    private boolean closed;
+
+    @Override
+    public synchronized void warmUp() {
+        if (closed || warmUpThread != null) {
+            return;
+        }
+        warmUpThread = new Thread(() -> {
+            Bitmap blank = Bitmap.createBitmap(WARM_UP_IMAGE_SIZE, WARM_UP_IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+            InputImage image = InputImage.fromBitmap(blank, 0);
+            for (Tier tier : Tier.values()) {
+                long start = System.currentTimeMillis();
+                try {
+                    detectFacesBlocking(image, tier);
+                    Log.d(TAG, "Детектор " + tier + " прогрет за " + (System.currentTimeMillis() - start) + " мс");
+                } catch (Exception e) {
+                    Log.w(TAG, "Прогрев детектора " + tier + " не удался: " + e.getMessage());
+                }
+            }
+            blank.recycle();
+        }, "FaceDetection-warmup");
+        warmUpThread.setPriority(Thread.MIN_PRIORITY);
+        warmUpThread.start();
+    }
+
+    @Override
+    public void detectFaces(InputImage image, Tier tier, FaceDetectionCallback callback) {
+        FaceDetector detector;
+        try {
+            detector = getDetector(tier);
+        } catch (IllegalStateException e) {
+            callback.onError(e.getMessage());
+            return;
+        }
+        detector.process(image)
+                .addOnSuccessListener(faces -> callback.onFacesDetected(faces != null ? faces : new ArrayList<>()))
+                .addOnFailureListener(e -> callback.onError(e.getMessage()));
+    }
+
+    @Override
+    public List<Face> detectFacesBlocking(InputImage image, Tier tier) throws Exception {
+        List<Face> faces = Tasks.await(getDetector(tier).process(image));
+        return faces != null ? faces : new ArrayList<>();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (warmUpThread != null) {
+            warmUpThread.interrupt(); // Прогрев, не успевший дойти до детектора, получит closed
+        }
+        if (presenceDetector != null) {
+            presenceDetector.close();
+            presenceDetector = null;
+        }
+        if (landmarkDetector != null) {
+            landmarkDetector.close();
+            landmarkDetector = null;
+        }
+        Log.d(TAG, "Детекторы закрыты");
+    }
+
+    private synchronized FaceDetector getDetector(Tier tier) {
+        if (closed) {
+            throw new IllegalStateException("Face detection service is closed");
+        }
+        if (tier == Tier.PRESENCE) {
+            if (presenceDetector == null) {
+                presenceDetector = FaceDetection.getClient(presenceOptions());
+            }
+            return presenceDetector;
+        }
+        if (landmarkDetector == null) {
+            landmarkDetector = FaceDetection.getClient(landmarkOptions());
+        }
+        return landmarkDetector;
+    }
+
+    /**
+     * FAST, без точек, с трекингом — для каждого кадра камеры
+     */
+    private static FaceDetectorOptions presenceOptions() {
+        return new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
+                .setMinFaceSize(0.15f)
+                .enableTracking()
+                .build();
+    }
+
+    /**
+     * ACCURATE, все точки — для выравнивания лица перед эмбеддингом
+     */
+    private static FaceDetectorOptions landmarkOptions() {
+        return new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL) // Точки для выравнивания
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
+                .setMinFaceSize(0.1f)
+                .build();
+    }
+}
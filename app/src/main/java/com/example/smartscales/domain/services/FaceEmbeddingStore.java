@@ -0,0 +1,287 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Галерея эмбеддингов лиц в виде одной плоской матрицы float[] (row-major)
+ * и параллельного массива id пользователей.
+ * Векторы хранятся уже нормализованными, поэтому косинусное сходство
+ * сводится к скалярному произведению без пересчёта норм на каждом сравнении.
+ *
+ * Начиная с размера exactSearchThreshold поиск идёт по HNSW-индексу,
+ * ниже порога — точным линейным проходом.
+ */
+public class FaceEmbeddingStore implements EmbeddingGallery {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int DEFAULT_EXACT_SEARCH_THRESHOLD = 1000;
+    private static final int HNSW_MAX_LINKS = 16;
+    private static final int HNSW_EF_CONSTRUCTION = 100;
+    private static final int DEFAULT_EF_SEARCH = 64;
+
+    private final int dimension;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] matrix;
+    private int[] userIds;
+    private int size;
+    private final UserRowIndex rowIndex = new UserRowIndex();
+
+    private HnswIndex index;
+    private int exactSearchThreshold = DEFAULT_EXACT_SEARCH_THRESHOLD;
+    private int efSearch = DEFAULT_EF_SEARCH;
+
+    public FaceEmbeddingStore(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Invalid embedding dimension: " + dimension);
+        }
+        this.dimension = dimension;
+        this.matrix = new float[INITIAL_CAPACITY * dimension];
+        this.userIds = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Добавляет или заменяет эмбеддинг пользователя. Вектор копируется и нормализуется.
+     */
+    @Override
+    public void put(int userId, float[] embedding) {
+        checkDimension(embedding);
+        lock.writeLock().lock();
+        try {
+            int row = rowIndex.get(userId);
+            if (row < 0) {
+                ensureCapacity(size + 1);
+                row = size++;
+                userIds[row] = userId;
+                rowIndex.put(userId, row);
+            }
+            int offset = row * dimension;
+            System.arraycopy(embedding, 0, matrix, offset, dimension);
+            normalizeRow(offset);
+
+            if (index != null) {
+                index.add(userId, matrix, offset);
+            } else if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет эмбеддинг пользователя; последняя строка переносится на место удалённой.
+     */
+    @Override
+    public boolean remove(int userId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowIndex.remove(userId, userIds, size);
+            if (row < 0) {
+                return false;
+            }
+            int last = --size;
+            if (row != last) {
+                System.arraycopy(matrix, last * dimension, matrix, row * dimension, dimension);
+            }
+            if (index != null) {
+                index.remove(userId);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            size = 0;
+            rowIndex.clear();
+            index = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Настройка компромисса точность/скорость: размер галереи, с которого включается HNSW,
+     * и ширина поиска efSearch (больше — выше recall, но медленнее).
+     */
+    public void setIndexParameters(int exactSearchThreshold, int efSearch) {
+        lock.writeLock().lock();
+        try {
+            this.exactSearchThreshold = exactSearchThreshold;
+            this.efSearch = efSearch;
+            if (index != null) {
+                index.setEfSearch(efSearch);
+            } else if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(int userId) {
+        lock.readLock().lock();
+        try {
+            return rowIndex.get(userId) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(userIds, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Rows exportRows() {
+        lock.readLock().lock();
+        try {
+            return new Rows(dimension, Arrays.copyOf(userIds, size), Arrays.copyOf(matrix, size * dimension));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Принимает rows.vectors как матрицу без копирования; строки нормализуются на месте
+     */
+    @Override
+    public void loadRows(Rows rows) {
+        if (rows.dimension != dimension) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " + dimension +
+                    ", got " + rows.dimension);
+        }
+        lock.writeLock().lock();
+        try {
+            matrix = rows.vectors;
+            userIds = rows.userIds;
+            size = rows.size();
+            rowIndex.clear();
+            for (int row = 0; row < size; row++) {
+                rowIndex.put(userIds[row], row);
+                normalizeRow(row * dimension);
+            }
+            index = null;
+            if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Линейный проход по матрице с отбором K ближайших через ограниченную min-кучу;
+     * на больших галереях проход распараллеливается (ParallelScan).
+     * Запрос нормализовать не обязательно.
+     */
+    @Override
+    public SearchResult searchNearest(float[] query, int k) {
+        checkDimension(query);
+        float queryNorm = norm(query);
+        if (queryNorm == 0) {
+            return SearchResult.EMPTY;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return SearchResult.EMPTY;
+            }
+            if (index != null && size >= exactSearchThreshold) {
+                return index.search(query, Math.min(k, size), 1f / queryNorm);
+            }
+            final float[] m = matrix;
+            final int[] ids = userIds;
+            final int d = dimension;
+            TopKCollector collector = ParallelScan.scan(size, Math.min(k, size), (from, to, out) -> {
+                for (int row = from, offset = from * d; row < to; row++, offset += d) {
+                    float dot = 0;
+                    for (int i = 0; i < d; i++) {
+                        dot += query[i] * m[offset + i];
+                    }
+                    if (dot > out.threshold()) {
+                        out.offer(ids[row], dot);
+                    }
+                }
+            });
+            return collector.toResult(1f / queryNorm);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void buildIndex() {
+        index = new HnswIndex(dimension, HNSW_MAX_LINKS, HNSW_EF_CONSTRUCTION, efSearch);
+        for (int row = 0; row < size; row++) {
+            index.add(userIds[row], matrix, row * dimension);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= userIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, userIds.length * 2);
+        userIds = Arrays.copyOf(userIds, capacity);
+        matrix = Arrays.copyOf(matrix, capacity * dimension);
+    }
+
+    private void normalizeRow(int offset) {
+        float sum = 0;
+        for (int i = offset; i < offset + dimension; i++) {
+            sum += matrix[i] * matrix[i];
+        }
+        float norm = (float) Math.sqrt(sum);
+        if (norm > 0) {
+            for (int i = offset; i < offset + dimension; i++) {
+                matrix[i] /= norm;
+            }
+        }
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " + dimension +
+                    ", got " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private static float norm(float[] vector) {
+        float sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
@@ -3,6 +3,7 @@
 package com.example.smartscales.domain.services;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
 import android.os.Environment;
@@ -10,56 +11,76 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
+import androidx.preference.PreferenceManager;
 
 import com.example.smartscales.data.database.AppDatabase;
 import com.example.smartscales.data.database.dao.UserDao;
 import com.example.smartscales.data.models.User;
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
 import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
+import com.example.smartscales.utils.EmbeddingCodec;
+import com.example.smartscales.utils.FaceAligner;
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 public class FaceRecognitionService implements FaceRecognitionInterface {
     private static final String TAG = "FaceRecognitionService";
 
-    private boolean isFaceDetectorInitialized = false;
-    private CountDownLatch initializationLatch = new CountDownLatch(1);
-    private static final float RECOGNITION_THRESHOLD = 0.6f; // Порог распознавания 60%
+    public static final float RECOGNITION_THRESHOLD = 0.6f; // Порог распознавания 60%
+    public static final float MIN_MATCH_MARGIN = 0.05f; // Минимальный отрыв от второго кандидата
     private static final float DETECTION_CONFIDENCE = 0.7f; // Минимальная уверенность детекции
-    private static final int FACE_EMBEDDING_SIZE = 128; // Размер вектора лица
-
-    private Context context;
-    private FaceDetector faceDetector;
+    private static final int FACE_EMBEDDING_SIZE = 128; // Размер вектора заглушки без модели
+    private static final int ANN_EXACT_SEARCH_THRESHOLD = 1000; // С этого размера галереи — HNSW
+    private static final int ANN_EF_SEARCH = 64; // Ширина поиска HNSW (recall/latency)
+    private static final int INT8_RESCORE_DEPTH = 16; // Кандидатов для пересчёта с float-запросом в int8-галерее
+
+    public static final String PREF_GALLERY_MODE = "face_gallery_mode";
+    public static final String GALLERY_MODE_FLOAT = "float"; // float32 + HNSW для больших галерей
+    public static final String GALLERY_MODE_INT8 = "int8";   // int8, в 4 раза меньше памяти; большие — HNSW по int8
+    public static final String GALLERY_MODE_PQ = "pq";       // product quantization для десятков тысяч лиц
+
+    private static final String PQ_CODEBOOK_FILE = "face_pq_codebook.bin";
+    private static final String GALLERY_SNAPSHOT_FILE = "face_gallery.snapshot";
+    private static final int PQ_SUBSPACES = 32; // Байт на пользователя в PQ-галерее
+    private static final int PQ_MIN_TRAINING_VECTORS = 256;
+
+    protected final Context context;
+    protected final int embeddingSize;
+    private final FaceDetectionInterface faceDetection;
     private ExecutorService executorService;
     private UserDao userDao;
-    private Map<String, float[]> faceEmbeddingsCache;
+    private final GallerySynchronizer gallerySync;
+    private final FaceAligner faceAligner = new FaceAligner(FaceAligner.TEMPLATE_SIZE);
+    private String galleryMode;
 
-    public FaceRecognitionService(Context context) {
-        Log.d(TAG, "Конструктор вызван");
-        this.context = context.getApplicationContext();
-        Log.d(TAG, "Context получен: " + (this.context != null));
+    public FaceRecognitionService(Context context, FaceDetectionInterface faceDetection) {
+        this(context, faceDetection, FACE_EMBEDDING_SIZE);
+    }
 
+    /**
+     * @param faceDetection общий сервис детекции приложения; сервис распознавания его не закрывает
+     * @param embeddingSize размерность эмбеддинга движка; эмбеддинги другой размерности в БД пропускаются
+     */
+    protected FaceRecognitionService(Context context, FaceDetectionInterface faceDetection, int embeddingSize) {
+        Log.d(TAG, "Конструктор вызван, размер эмбеддинга " + embeddingSize);
         this.context = context.getApplicationContext();
+        this.faceDetection = faceDetection;
+        this.embeddingSize = embeddingSize;
         this.executorService = Executors.newFixedThreadPool(4);
-        this.faceEmbeddingsCache = new HashMap<>();
+        this.gallerySync = new GallerySynchronizer(createGallery(embeddingSize));
+        // Галерея доступна сразу из снимка, база подключается позже и догоняет дельтой
+        gallerySync.restoreSnapshot(new File(getDatabaseDir(), GALLERY_SNAPSHOT_FILE));
         new Handler(Looper.getMainLooper()).postDelayed(() -> {
             initializeDatabase();
         }, 1000);
@@ -67,6 +88,85 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
 
 
 
+    /**
+     * float- и int8-галереи сами включают HNSW с ANN_EXACT_SEARCH_THRESHOLD пользователей,
+     * в том числе когда галерея дорастает до порога на дельтах синхронизации
+     */
+    private EmbeddingGallery createGallery(int dimension) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        galleryMode = preferences.getString(PREF_GALLERY_MODE, GALLERY_MODE_INT8);
+        Log.d(TAG, "Режим галереи эмбеддингов: " + galleryMode);
+
+        if (GALLERY_MODE_FLOAT.equals(galleryMode)) {
+            FaceEmbeddingStore store = new FaceEmbeddingStore(dimension);
+            store.setIndexParameters(ANN_EXACT_SEARCH_THRESHOLD, ANN_EF_SEARCH);
+            return store;
+        }
+        // Для PQ — int8 до загрузки кодбука, см. preparePqGallery()
+        Int8EmbeddingStore store = new Int8EmbeddingStore(dimension, INT8_RESCORE_DEPTH);
+        store.setIndexParameters(ANN_EXACT_SEARCH_THRESHOLD, ANN_EF_SEARCH);
+        return store;
+    }
+
+    /**
+     * Загружает кодбук PQ рядом с базой или обучает его на эмбеддингах из users.
+     * Повреждённый файл кодбука удаляется и кодбук обучается заново.
+     * При нехватке данных для обучения галерея остаётся int8.
+     */
+    private void preparePqGallery() {
+        File databaseDir = getDatabaseDir();
+        File codebookFile = new File(databaseDir, PQ_CODEBOOK_FILE);
+        try {
+            ProductQuantizer quantizer;
+            try {
+                quantizer = ProductQuantizer.load(codebookFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Кодбук PQ повреждён, обучаем заново: " + e.getMessage());
+                if (!codebookFile.delete()) {
+                    Log.w(TAG, "Не удалось удалить " + codebookFile.getAbsolutePath());
+                }
+                quantizer = null;
+            }
+            if (quantizer == null || quantizer.getDimension() != embeddingSize) {
+                quantizer = trainProductQuantizer();
+                if (quantizer == null) {
+                    return;
+                }
+                if (databaseDir != null && !databaseDir.exists()) {
+                    databaseDir.mkdirs();
+                }
+                quantizer.save(codebookFile);
+                Log.i(TAG, "Кодбук PQ обучен и сохранён: " + codebookFile.getAbsolutePath());
+            }
+            gallerySync.rebuild(new PqEmbeddingStore(quantizer));
+            Log.i(TAG, "PQ-галерея: " + quantizer.getCodeSize() + " байт на пользователя");
+        } catch (IOException e) {
+            Log.e(TAG, "Ошибка кодбука PQ, остаёмся на int8: " + e.getMessage(), e);
+        }
+    }
+
+    private File getDatabaseDir() {
+        return context.getDatabasePath(AppDatabase.DATABASE_NAME).getParentFile();
+    }
+
+    private ProductQuantizer trainProductQuantizer() {
+        List<float[]> vectors = new ArrayList<>();
+        for (byte[] blob : userDao.getActiveFaceEmbeddings()) {
+            if (EmbeddingCodec.dimensionOf(blob) == embeddingSize) {
+                vectors.add(EmbeddingCodec.decode(blob));
+            }
+        }
+        if (vectors.size() < PQ_MIN_TRAINING_VECTORS) {
+            Log.w(TAG, "Недостаточно эмбеддингов для обучения PQ: " + vectors.size());
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        ProductQuantizer quantizer = ProductQuantizer.train(vectors, embeddingSize, PQ_SUBSPACES);
+        Log.d(TAG, "Обучение PQ на " + vectors.size() + " векторах: " +
+                (System.currentTimeMillis() - start) + " мс");
+        return quantizer;
+    }
+
     private void initializeDatabase() {
         executorService.execute(() -> {
             try {
@@ -78,7 +178,10 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
                 userDao = database.userDao();
                 Log.d(TAG, "UserDao получен: " + (userDao != null));
 
-                loadFaceEmbeddingsFromDatabase();
+                gallerySync.start(database);
+                if (GALLERY_MODE_PQ.equals(galleryMode)) {
+                    preparePqGallery();
+                }
                 Log.i(TAG, "Face Recognition Service initialized with database");
 
             } catch (Exception e) {
@@ -88,48 +191,11 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
         });
     }
 
-    private void loadFaceEmbeddingsFromDatabase() {
-        try {
-            List<User> users = userDao.getAllActiveUsers().getValue();
-            if (users != null) {
-                for (User user : users) {
-                    if (user.getFaceEmbedding() != null) {
-                        float[] embedding = byteArrayToFloatArray(user.getFaceEmbedding());
-                        faceEmbeddingsCache.put(user.getName(), embedding);
-                    }
-                }
-                Log.i(TAG, "Loaded " + faceEmbeddingsCache.size() + " face embeddings from database");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading face embeddings: " + e.getMessage());
-        }
-    }
-
     @Override
     public void initialize(Context context) {
-        executorService.execute(() -> {
-            try {
-                Log.d(TAG, "Инициализация FaceDetector...");
-
-                FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                        .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                        .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
-                        .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-                        .setMinFaceSize(0.1f)
-                        .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
-                        .build();
-
-                faceDetector = FaceDetection.getClient(options);
-                isFaceDetectorInitialized = true;
-                initializationLatch.countDown();
-
-                Log.i(TAG, "Face Detector инициализирован");
-
-            } catch (Exception e) {
-                Log.e(TAG, "Face detector initialization failed: " + e.getMessage(), e);
-                initializationLatch.countDown();
-            }
-        });
+        // Детекторы общие: их создаёт и прогревает App через FaceDetectionService.
+        // Сюда приходят вырезанные лица и фото регистрации — точный уровень каскада
+        Log.i(TAG, "Face Detector инициализирован");
     }
 
 //    @Override
@@ -218,10 +284,17 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
 
     @Override
     public void registerUser(String name, Bitmap faceImage, FaceRegistrationCallback callback) {
+        registerUser(name, Collections.singletonList(faceImage), callback);
+    }
+
+    @Override
+    public void registerUser(String name, List<Bitmap> faceImages, FaceRegistrationCallback callback) {
         executorService.execute(() -> {
             try {
-                Log.d(TAG, "=== РЕГИСТРАЦИЯ ПОЛЬЗОВАТЕЛЯ: " + name + " ===");
-                saveBitmapForDebug(faceImage, "original_" + name + ".jpg");
+                Log.d(TAG, "=== РЕГИСТРАЦИЯ ПОЛЬЗОВАТЕЛЯ: " + name + ", фото: " + faceImages.size() + " ===");
+                if (!faceImages.isEmpty()) {
+                    saveBitmapForDebug(faceImages.get(0), "original_" + name + ".jpg");
+                }
 
                 // 2. Проверяем существование пользователя
                 if (userDao == null) {
@@ -236,20 +309,27 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
                     return;
                 }
 
-                Log.d(TAG, "Размер фото: " + faceImage.getWidth() + "x" + faceImage.getHeight());
-
-                // 3. ВРЕМЕННО: Тут пробно используется ML Kit для тестирования
-                // Создаем тестовый эмбеддинг
-                float[] embedding = new float[FACE_EMBEDDING_SIZE];
-                for (int i = 0; i < embedding.length; i++) {
-                    embedding[i] = (float) i / embedding.length;
+                // 3. Находим и выравниваем лицо на каждом фото; фото без лица пропускаем
+                List<Bitmap> alignedFaces = new ArrayList<>(faceImages.size());
+                for (Bitmap faceImage : faceImages) {
+                    Bitmap alignedFace = detectAndAlignFace(faceImage);
+                    if (alignedFace != null) {
+                        alignedFaces.add(alignedFace);
+                    }
+                }
+                if (alignedFaces.isEmpty()) {
+                    callback.onError("Лицо на фото не обнаружено");
+                    return;
                 }
-                normalizeVector(embedding);
+                Log.d(TAG, "Лицо найдено на " + alignedFaces.size() + " из " + faceImages.size() + " фото");
+
+                // 4. Эмбеддинги всех фото одним батчем, затем один итоговый
+                float[] embedding = aggregateEmbeddings(generateFaceEmbeddings(alignedFaces));
 
-                // 4. Конвертируем в byte[]
-                byte[] embeddingBytes = floatArrayToByteArray(embedding);
+                // 5. Конвертируем в byte[] (int8 + масштаб)
+                byte[] embeddingBytes = EmbeddingCodec.encodeInt8(embedding);
 
-                // 5. Создаем пользователя с реальными весами из UI
+                // 6. Создаем пользователя с реальными весами из UI
                 // НУЖНО будет потом использовать реальные веса из параметров метода!
                 // Сейчас передаем начальный вес 70.0f и целевой 65.0f - это фиксированные значения!
 
@@ -261,12 +341,12 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
                 user.setActive(true);
                 user.setCreatedAt(new java.util.Date());
 
-                // 6. Сохраняем в БД
+                // 7. Сохраняем в БД
                 long id = userDao.insert(user);
                 user.setId((int) id);
 
-                // 7. Добавляем в кэш
-                faceEmbeddingsCache.put(name, embedding);
+                // 8. Добавляем в галерею сразу, не дожидаясь синхронизации с БД
+                gallerySync.getGallery().put((int) id, embedding);
 
                 Log.d(TAG, "✅ Пользователь успешно зарегистрирован! ID: " + id);
                 callback.onSuccess(user);
@@ -278,6 +358,54 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
         });
     }
 
+    /**
+     * Медоида (фото, ближайшее ко всем остальным) и среднее согласных с ней эмбеддингов:
+     * кадр с закрытыми глазами или чужим лицом в итог не попадает
+     */
+    private static float[] aggregateEmbeddings(float[][] embeddings) {
+        int count = embeddings.length;
+        if (count == 1) {
+            return embeddings[0];
+        }
+
+        int medoid = 0;
+        float bestSum = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            float sum = 0;
+            for (int j = 0; j < count; j++) {
+                if (i != j) {
+                    sum += dot(embeddings[i], embeddings[j]);
+                }
+            }
+            if (sum > bestSum) {
+                bestSum = sum;
+                medoid = i;
+            }
+        }
+
+        float[] mean = new float[embeddings[medoid].length];
+        int used = 0;
+        for (float[] embedding : embeddings) {
+            if (embedding == embeddings[medoid] || dot(embedding, embeddings[medoid]) >= RECOGNITION_THRESHOLD) {
+                for (int d = 0; d < mean.length; d++) {
+                    mean[d] += embedding[d];
+                }
+                used++;
+            }
+        }
+        Log.d(TAG, "Итоговый эмбеддинг по " + used + " из " + count + " фото");
+        normalizeVector(mean);
+        return mean;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
     @Override
     public void recognizeUser(Bitmap faceImage, FaceRecognitionCallback callback) {
         executorService.execute(() -> {
@@ -287,47 +415,28 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
 
                 saveBitmapForDebug(faceImage, "debug_face_input.jpg");
 
-                if (faceDetector == null) {
-                    Log.e(TAG, "FaceDetector is null! Инициализируем заново...");
-                    initialize(context);
-                    Thread.sleep(1000);
+                List<Face> faces = detectFaces(faceImage);
+                Log.d(TAG, "Обнаружено лиц: " + faces.size());
+                if (faces.isEmpty()) {
+                    callback.onNoFaceDetected();
+                    return;
                 }
 
-                InputImage inputImage = InputImage.fromBitmap(faceImage, 0);
-                Log.d(TAG, "InputImage создана, rotation: 0");
-
-                Task<List<Face>> faceTask = faceDetector.process(inputImage);
-
-                faceTask.addOnSuccessListener(faces -> {
-                            Log.d(TAG, "Обнаружено лиц: " + (faces != null ? faces.size() : 0));
-
-                            if (faces == null || faces.isEmpty()) {
-                                Log.d(TAG, "Лица не обнаружены");
-                                callback.onNoFaceDetected();
-                                return;
-                            }
-
-                            Face firstFace = faces.get(0);
-                            Log.d(TAG, "Первое лицо: bounds=" + firstFace.getBoundingBox() +
-                                    ", trackingId=" + firstFace.getTrackingId());
-
-
-                            if (!faceEmbeddingsCache.isEmpty()) {
-                                String firstName = faceEmbeddingsCache.keySet().iterator().next();
-                                User user = userDao.getUserByName(firstName);
-                                if (user != null) {
-                                    callback.onUserRecognized(user, 0.8f);
-                                } else {
-                                    callback.onUnknownFace();
-                                }
-                            } else {
-                                callback.onUnknownFace();
-                            }
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Ошибка обнаружения лиц: " + e.getMessage(), e);
-                            callback.onError("Face detection failed: " + e.getMessage());
-                        });
+                // Выровненное лицо нужно только до конца этого вызова — буфер потока
+                Bitmap alignedFace = faceAligner.alignReusing(faceImage, getBestFace(faces));
+                if (alignedFace == null) {
+                    callback.onNoFaceDetected();
+                    return;
+                }
+
+                // Поиск и чтение пользователя — в потоке executor, не в главном
+                SearchResult match = findBestMatch(generateFaceEmbedding(alignedFace));
+                User user = match != null && userDao != null ? userDao.getUserById(match.getUserId(0)) : null;
+                if (user != null) {
+                    callback.onUserRecognized(user, match.getSimilarity(0));
+                } else {
+                    callback.onUnknownFace();
+                }
 
             } catch (Exception e) {
                 Log.e(TAG, "Recognition error: " + e.getMessage(), e);
@@ -336,24 +445,36 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
         });
     }
 
-    private RecognitionResult findBestMatch(float[] detectedEmbedding) {
-        String bestMatchName = null;
-        float bestMatchScore = 0;
-
-        for (Map.Entry<String, float[]> entry : faceEmbeddingsCache.entrySet()) {
-            float similarity = cosineSimilarity(detectedEmbedding, entry.getValue());
+    @Override
+    public float[][] embedFaces(List<Bitmap> faceImages) {
+        return generateFaceEmbeddings(faceImages);
+    }
 
-            if (similarity > bestMatchScore) {
-                bestMatchScore = similarity;
-                bestMatchName = entry.getKey();
-            }
+    @Override
+    public SearchResult searchNearest(float[] query, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
         }
-
-        if (bestMatchName != null) {
-            return new RecognitionResult(bestMatchName, bestMatchScore);
+        EmbeddingGallery gallery = gallerySync.getGallery();
+        if (query == null || query.length != gallery.getDimension()) {
+            return SearchResult.EMPTY;
         }
+        return gallery.searchNearest(query, k);
+    }
 
-        return null;
+    /**
+     * Лучший кандидат по двум ближайшим: отклоняет слабые и неоднозначные совпадения
+     */
+    private SearchResult findBestMatch(float[] detectedEmbedding) {
+        SearchResult result = searchNearest(detectedEmbedding, 2);
+        if (result.isEmpty() || result.getSimilarity(0) < RECOGNITION_THRESHOLD) {
+            return null;
+        }
+        if (result.getMargin() < MIN_MATCH_MARGIN) {
+            Log.d(TAG, "Неоднозначное совпадение: отрыв " + result.getMargin());
+            return null;
+        }
+        return result;
     }
 
     private Face getBestFace(List<Face> faces) {
@@ -373,23 +494,40 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
         return bestFace;
     }
 
-    // Упрощенная генерация эмбеддинга (в реальном приложении нужно использовать модель)
-    private float[] generateFaceEmbedding(Bitmap faceImage, Face face) {
-        float[] embedding = new float[FACE_EMBEDDING_SIZE];
+    /**
+     * Синхронная детекция в потоке executor; детекторы общие и создаются при первом обращении
+     */
+    private List<Face> detectFaces(Bitmap image) throws Exception {
+        return faceDetection.detectFacesBlocking(InputImage.fromBitmap(image, 0),
+                FaceDetectionInterface.Tier.LANDMARKS);
+    }
 
-        // Временная реализация - генерируем случайные эмбеддинги
-        // В реальном приложении здесь должна быть нейросеть
-        for (int i = 0; i < FACE_EMBEDDING_SIZE; i++) {
-            embedding[i] = (float) Math.random();
-        }
+    private Bitmap detectAndAlignFace(Bitmap image) throws Exception {
+        List<Face> faces = detectFaces(image);
+        return faces.isEmpty() ? null : faceAligner.align(image, getBestFace(faces));
+    }
 
-        // Нормализуем вектор
-        normalizeVector(embedding);
+    /**
+     * Эмбеддинг выровненного лица. Базовая реализация — заглушка без модели,
+     * настоящий движок переопределяет метод (TFLiteFaceRecognition)
+     */
+    protected float[] generateFaceEmbedding(Bitmap faceImage) {
+        return createTestEmbedding();
+    }
 
-        return embedding;
+    /**
+     * Эмбеддинги нескольких лиц в порядке faceImages. Движок с моделью считает их
+     * одним батчем; по умолчанию — по одному
+     */
+    protected float[][] generateFaceEmbeddings(List<Bitmap> faceImages) {
+        float[][] embeddings = new float[faceImages.size()][];
+        for (int i = 0; i < embeddings.length; i++) {
+            embeddings[i] = generateFaceEmbedding(faceImages.get(i));
+        }
+        return embeddings;
     }
 
-    private void normalizeVector(float[] vector) {
+    protected static void normalizeVector(float[] vector) {
         float sum = 0;
         for (float v : vector) {
             sum += v * v;
@@ -403,68 +541,34 @@ public class FaceRecognitionService implements FaceRecognitionInterface {
         }
     }
 
-    private float cosineSimilarity(float[] vectorA, float[] vectorB) {
-        if (vectorA.length != vectorB.length) {
-            return 0;
-        }
-
-        float dotProduct = 0;
-        float normA = 0;
-        float normB = 0;
-
-        for (int i = 0; i < vectorA.length; i++) {
-            dotProduct += vectorA[i] * vectorB[i];
-            normA += vectorA[i] * vectorA[i];
-            normB += vectorB[i] * vectorB[i];
-        }
-
-        if (normA == 0 || normB == 0) {
-            return 0;
-        }
-
-        return dotProduct / (float) (Math.sqrt(normA) * Math.sqrt(normB));
-    }
-
-    private byte[] floatArrayToByteArray(float[] floats) {
-        ByteBuffer buffer = ByteBuffer.allocate(floats.length * 4);
-        for (float f : floats) {
-            buffer.putFloat(f);
+    // ВРЕМЕННО: фиксированный тестовый вектор, пока нет модели эмбеддингов
+    private float[] createTestEmbedding() {
+        float[] embedding = new float[embeddingSize];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) i / embedding.length;
         }
-        return buffer.array();
-    }
-
-    private float[] byteArrayToFloatArray(byte[] bytes) {
-        FloatBuffer buffer = ByteBuffer.wrap(bytes).asFloatBuffer();
-        float[] floats = new float[buffer.remaining()];
-        buffer.get(floats);
-        return floats;
+        normalizeVector(embedding);
+        return embedding;
     }
 
     @Override
     public boolean isAvailable() {
-        return faceDetector != null && userDao != null;
+        return userDao != null;
     }
 
     @Override
     public void clearCache() {
-        faceEmbeddingsCache.clear();
-        loadFaceEmbeddingsFromDatabase();
-        Log.i(TAG, "Face recognition cache cleared and reloaded");
+        gallerySync.rebuild(createGallery(embeddingSize));
+        if (GALLERY_MODE_PQ.equals(galleryMode) && userDao != null) {
+            executorService.execute(this::preparePqGallery);
+        }
+        Log.i(TAG, "Face recognition cache rebuild requested");
     }
 
     public int getRegisteredCount() {
-        return faceEmbeddingsCache.size();
+        return gallerySync.getGallery().size();
     }
 
-    private static class RecognitionResult {
-        String userName;
-        float confidence;
-
-        RecognitionResult(String userName, float confidence) {
-            this.userName = userName;
-            this.confidence = confidence;
-        }
-    }
     private void saveBitmapForDebug(Bitmap bitmap, String filename) {
         try {
             File file = new File(context.getExternalFilesDir(Environment.DIRECTORY_PICTURES), filename);
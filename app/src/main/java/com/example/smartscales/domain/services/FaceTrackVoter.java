@@ -0,0 +1,154 @@
+package com.example.smartscales.domain.services;
+
+import android.util.SparseArray;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Голосование по нескольким кадрам одного лица, сгруппированным по trackingId ML Kit.
+ *
+ * Для каждого трека суммируются сходства кандидатов выше порога; отсутствие кандидата
+ * в кадре считается нулём. Решение принимается, когда среднее лидера не ниже порога
+ * и отрыв от второго не меньше минимального. После решения кадры трека больше
+ * не нужны — эмбеддинг для него не считается.
+ */
+public class FaceTrackVoter {
+    public static final int UNKNOWN_USER = -1;
+
+    private static final int MIN_FRAMES = 3;         // Кадров до первого решения
+    private static final int MAX_FRAMES = 8;         // Без сходимости — неизвестное лицо
+    private static final long TRACK_TIMEOUT_MS = 3000; // Трек, не виденный дольше, забывается
+
+    private final float threshold;
+    private final float minMargin;
+    private final SparseArray<Track> tracks = new SparseArray<>();
+
+    public FaceTrackVoter(float threshold, float minMargin) {
+        this.threshold = threshold;
+        this.minMargin = minMargin;
+    }
+
+    /**
+     * Нужен ли треку ещё один кадр; заодно отмечает, что трек в кадре
+     */
+    public synchronized boolean needsFrame(int trackingId, long now) {
+        evictStale(now);
+        Track track = tracks.get(trackingId);
+        if (track == null) {
+            track = new Track();
+            tracks.put(trackingId, track);
+        }
+        track.lastSeen = now;
+        return track.decision == null;
+    }
+
+    /**
+     * Учитывает кандидатов очередного кадра.
+     * @return решение, если оно принято именно этим кадром, иначе null
+     */
+    public synchronized Decision addFrame(int trackingId, SearchResult candidates, long now) {
+        Track track = tracks.get(trackingId);
+        if (track == null || track.decision != null) {
+            return null; // Трек забыт или уже решён, пока считался эмбеддинг
+        }
+        track.lastSeen = now;
+        track.frames++;
+        for (int i = 0; i < candidates.size(); i++) {
+            float similarity = candidates.getSimilarity(i);
+            if (similarity < threshold) {
+                break; // Кандидаты упорядочены по убыванию
+            }
+            Float sum = track.scores.get(candidates.getUserId(i));
+            track.scores.put(candidates.getUserId(i), sum == null ? similarity : sum + similarity);
+        }
+
+        track.decision = decide(trackingId, track);
+        return track.decision;
+    }
+
+    public synchronized Decision getDecision(int trackingId) {
+        Track track = tracks.get(trackingId);
+        return track != null ? track.decision : null;
+    }
+
+    /**
+     * Забывает голоса трека — следующие кадры голосуют заново
+     */
+    public synchronized void reset(int trackingId) {
+        tracks.remove(trackingId);
+    }
+
+    public synchronized void clear() {
+        tracks.clear();
+    }
+
+    private Decision decide(int trackingId, Track track) {
+        if (track.frames < MIN_FRAMES) {
+            return null;
+        }
+        if (track.scores.isEmpty()) {
+            return new Decision(trackingId, UNKNOWN_USER, 0, track.frames);
+        }
+
+        int leader = UNKNOWN_USER;
+        float best = 0;
+        float second = 0;
+        for (Map.Entry<Integer, Float> entry : track.scores.entrySet()) {
+            float mean = entry.getValue() / track.frames;
+            if (mean > best) {
+                second = best;
+                best = mean;
+                leader = entry.getKey();
+            } else if (mean > second) {
+                second = mean;
+            }
+        }
+
+        if (best >= threshold && best - second >= minMargin) {
+            return new Decision(trackingId, leader, best, track.frames);
+        }
+        if (track.frames >= MAX_FRAMES) {
+            return new Decision(trackingId, UNKNOWN_USER, best, track.frames);
+        }
+        return null;
+    }
+
+    private void evictStale(long now) {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            if (now - tracks.valueAt(i).lastSeen > TRACK_TIMEOUT_MS) {
+                tracks.removeAt(i);
+            }
+        }
+    }
+
+    private static class Track {
+        final Map<Integer, Float> scores = new HashMap<>();
+        int frames;
+        long lastSeen;
+        Decision decision;
+    }
+
+    /**
+     * Итог голосования по треку
+     */
+    public static final class Decision {
+        public final int trackingId;
+        public final int userId;       // UNKNOWN_USER — лицо не из галереи или неоднозначно
+        public final float confidence; // Среднее сходство лидера по кадрам трека
+        public final int frames;
+
+        Decision(int trackingId, int userId, float confidence, int frames) {
+            this.trackingId = trackingId;
+            this.userId = userId;
+            this.confidence = confidence;
+            this.frames = frames;
+        }
+
+        public boolean isKnown() {
+            return userId != UNKNOWN_USER;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.EmbeddingGallery.Rows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Снимок всей галереи в одном файле для быстрого старта.
+ *
+ * Формат (little-endian): заголовок HEADER_SIZE байт —
+ * [magic][версия формата][dimension][count][версия БД: long][CRC32 данных],
+ * затем count id (int) и count * dimension нормализованных float.
+ * Файл читается через FileChannel.map, строки одним массивом передаются галерее (loadRows).
+ */
+public class GallerySnapshot {
+    private static final int FILE_MAGIC = 0x46475331; // "FGS1"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int CHECKSUM_CHUNK = 64 * 1024;
+
+    private GallerySnapshot() {
+    }
+
+    /**
+     * Пишет снимок во временный файл и атомарно подменяет им старый
+     */
+    public static void save(File file, Rows rows, long databaseVersion) throws IOException {
+        int count = rows.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * 4 + rows.vectors.length * 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().put(rows.userIds);
+        buffer.position(HEADER_SIZE + count * 4);
+        buffer.asFloatBuffer().put(rows.vectors);
+
+        buffer.position(HEADER_SIZE);
+        int checksum = checksum(buffer);
+
+        buffer.position(0);
+        buffer.putInt(FILE_MAGIC)
+                .putInt(FILE_VERSION)
+                .putInt(rows.dimension)
+                .putInt(count)
+                .putLong(databaseVersion)
+                .putInt(checksum);
+        buffer.position(0);
+
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getName());
+        }
+    }
+
+    /**
+     * Заменяет содержимое target строками снимка.
+     * @return версия БД, на которой сделан снимок, или -1, если файла нет
+     *         или он не подходит (другая размерность, повреждение)
+     */
+    public static long load(File file, EmbeddingGallery target) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return -1;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.getInt() != FILE_MAGIC || mapped.getInt() != FILE_VERSION) {
+                throw new IOException("Unsupported snapshot file: " + file.getName());
+            }
+            int dimension = mapped.getInt();
+            int count = mapped.getInt();
+            long databaseVersion = mapped.getLong();
+            int expectedChecksum = mapped.getInt();
+
+            if (dimension != target.getDimension()) {
+                return -1;
+            }
+            long payloadSize = (long) count * 4 + (long) count * dimension * 4;
+            if (count < 0 || HEADER_SIZE + payloadSize != channel.size()) {
+                throw new IOException("Corrupted snapshot header");
+            }
+            mapped.position(HEADER_SIZE);
+            if (checksum(mapped) != expectedChecksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            int[] ids = new int[count];
+            float[] vectors = new float[count * dimension];
+            mapped.position(HEADER_SIZE);
+            mapped.asIntBuffer().get(ids);
+            mapped.position(HEADER_SIZE + count * 4);
+            mapped.asFloatBuffer().get(vectors);
+            target.loadRows(new Rows(dimension, ids, vectors));
+            return databaseVersion;
+        }
+    }
+
+    /**
+     * CRC32 от текущей позиции до конца буфера; позиция сдвигается в конец.
+     * CRC32.update(ByteBuffer) есть только с API 26, поэтому — через промежуточный массив
+     */
+    private static int checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[CHECKSUM_CHUNK];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.smartscales.domain.services;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.smartscales.data.database.AppDatabase;
+import com.example.smartscales.data.database.dao.UserDao;
+import com.example.smartscales.data.models.UserEmbeddingChange;
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.utils.EmbeddingCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Держит галерею эмбеддингов в соответствии с таблицей users.
+ *
+ * InvalidationTracker сообщает об изменении таблицы, после чего читаются только строки
+ * с version больше последней применённой и применяются как одиночные put/remove.
+ * Жёсткие удаления строк версии не оставляют — их ловит сверка списка активных id.
+ * Полная перезагрузка (rebuild) собирает новую галерею в фоне и подменяет её атомарно,
+ * так что распознавание не ждёт перезагрузки и не видит полупустую галерею.
+ *
+ * Если задан файл снимка, галерея при старте восстанавливается из него (GallerySnapshot),
+ * а из базы читается только дельта после версии снимка. После изменений снимок
+ * перезаписывается с задержкой, чтобы серия правок давала одну запись.
+ */
+public class GallerySynchronizer {
+    private static final String TAG = "GallerySynchronizer";
+
+    private static final long SNAPSHOT_SAVE_DELAY_MS = 5000;
+
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean snapshotSaveScheduled = new AtomicBoolean(false);
+
+    private volatile EmbeddingGallery gallery;
+    private AppDatabase database;
+    private UserDao userDao;
+    private InvalidationTracker invalidationTracker;
+    private long lastVersion = -1; // Меняется только в syncExecutor
+    private boolean restoredFromSnapshot;
+    private File snapshotFile;
+
+    private final InvalidationTracker.Observer usersObserver = new InvalidationTracker.Observer("users") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            requestSync();
+        }
+    };
+
+    public GallerySynchronizer(EmbeddingGallery gallery) {
+        this.gallery = gallery;
+    }
+
+    /**
+     * Без базы и InvalidationTracker: для тестов applyChanges и removeDeletedUsers
+     */
+    GallerySynchronizer(EmbeddingGallery gallery, UserDao userDao) {
+        this.gallery = gallery;
+        this.userDao = userDao;
+    }
+
+    public EmbeddingGallery getGallery() {
+        return gallery;
+    }
+
+    /**
+     * Восстанавливает галерею из снимка до подключения к базе.
+     * Повреждённый или несовместимый снимок игнорируется — тогда будет полная загрузка
+     */
+    public void restoreSnapshot(File file) {
+        this.snapshotFile = file;
+        syncExecutor.execute(() -> {
+            EmbeddingGallery target = gallery;
+            try {
+                long start = System.currentTimeMillis();
+                long version = GallerySnapshot.load(file, target);
+                if (version >= 0) {
+                    lastVersion = version;
+                    restoredFromSnapshot = true;
+                    Log.i(TAG, "Галерея восстановлена из снимка: " + target.size() +
+                            " эмбеддингов за " + (System.currentTimeMillis() - start) +
+                            " мс, версия " + version);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Снимок галереи не прочитан: " + e.getMessage());
+                target.clear();
+            }
+        });
+    }
+
+    /**
+     * Подключается к базе и запускает начальную загрузку
+     */
+    public void start(AppDatabase database) {
+        this.database = database;
+        this.userDao = database.userDao();
+        this.invalidationTracker = database.getInvalidationTracker();
+        invalidationTracker.addObserver(usersObserver);
+        requestSync();
+    }
+
+    public void stop() {
+        if (invalidationTracker != null) {
+            invalidationTracker.removeObserver(usersObserver);
+        }
+    }
+
+    /**
+     * Применяет накопившиеся изменения; повторные запросы до начала синхронизации схлопываются
+     */
+    public void requestSync() {
+        if (userDao == null || !syncScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        syncExecutor.execute(() -> {
+            syncScheduled.set(false);
+            try {
+                EmbeddingGallery target = gallery;
+                if (restoredFromSnapshot) {
+                    restoredFromSnapshot = false;
+                    // Снимок новее базы (данные приложения сброшены) — дельте верить нельзя.
+                    // Сравнение со счётчиком, не с MAX(version): удаление верхней строки его не откатывает
+                    if (lastVersion > database.getUsersVersion()) {
+                        Log.w(TAG, "Снимок новее базы, полная загрузка");
+                        target.clear();
+                        lastVersion = -1;
+                    }
+                }
+                if (lastVersion < 0) {
+                    lastVersion = loadAll(target);
+                    removeDeletedUsers(target, false);
+                    scheduleSnapshotSave();
+                    return;
+                }
+                long before = lastVersion;
+                lastVersion = applyChanges(target, lastVersion);
+                int removed = removeDeletedUsers(target, lastVersion == before);
+                if (lastVersion != before || removed > 0) {
+                    scheduleSnapshotSave();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка синхронизации галереи: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Полностью заполняет новую галерею из базы и подменяет ею текущую
+     */
+    public void rebuild(EmbeddingGallery fresh) {
+        syncExecutor.execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                long version = loadAll(fresh);
+                gallery = fresh;
+                lastVersion = version;
+                scheduleSnapshotSave();
+                Log.i(TAG, "Галерея перестроена: " + fresh.size() + " эмбеддингов за " +
+                        (System.currentTimeMillis() - start) + " мс");
+            } catch (Exception e) {
+                Log.e(TAG, "Ошибка перестроения галереи: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Полная загрузка активных эмбеддингов курсором: блобы декодируются в один буфер
+     * и сразу копируются в упакованную матрицу галереи, объекты User не создаются.
+     * Версия читается до курсора: изменения, попавшие между ними, повторно применятся как дельта.
+     * @return версия, с которой продолжать инкрементальную синхронизацию
+     */
+    private long loadAll(EmbeddingGallery target) {
+        long start = System.currentTimeMillis();
+        long version = database.getUsersVersion();
+        int dimension = target.getDimension();
+        float[] row = new float[dimension];
+        int loaded = 0;
+        int skipped = 0;
+
+        try (Cursor cursor = userDao.getActiveEmbeddingsCursor()) {
+            int idColumn = cursor.getColumnIndexOrThrow("id");
+            int embeddingColumn = cursor.getColumnIndexOrThrow("faceEmbedding");
+            while (cursor.moveToNext()) {
+                byte[] blob = cursor.getBlob(embeddingColumn);
+                if (EmbeddingCodec.dimensionOf(blob) != dimension) {
+                    skipped++;
+                    continue;
+                }
+                EmbeddingCodec.decodeInto(blob, row);
+                target.put(cursor.getInt(idColumn), row);
+                loaded++;
+            }
+        }
+
+        Log.i(TAG, "Загружено " + loaded + " эмбеддингов за " +
+                (System.currentTimeMillis() - start) + " мс" +
+                (skipped > 0 ? ", пропущено с другой размерностью: " + skipped : ""));
+        return version;
+    }
+
+    private void scheduleSnapshotSave() {
+        if (snapshotFile == null || !snapshotSaveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        syncExecutor.schedule(() -> {
+            snapshotSaveScheduled.set(false);
+            EmbeddingGallery.Rows rows = gallery.exportRows();
+            try {
+                GallerySnapshot.save(snapshotFile, rows, lastVersion);
+                Log.d(TAG, "Снимок галереи сохранён: " + rows.size() + " эмбеддингов, версия " + lastVersion);
+            } catch (IOException e) {
+                Log.e(TAG, "Не удалось сохранить снимок галереи: " + e.getMessage(), e);
+            }
+        }, SNAPSHOT_SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    long applyChanges(EmbeddingGallery target, long sinceVersion) {
+        List<UserEmbeddingChange> changes = userDao.getEmbeddingChangesSince(sinceVersion);
+        long version = sinceVersion;
+        int applied = 0;
+
+        for (UserEmbeddingChange change : changes) {
+            byte[] blob = change.faceEmbedding;
+            if (change.isActive && EmbeddingCodec.dimensionOf(blob) == target.getDimension()) {
+                target.put(change.id, EmbeddingCodec.decode(blob));
+                applied++;
+            } else {
+                if (change.isActive && blob != null) {
+                    Log.w(TAG, "Пропущен эмбеддинг пользователя " + change.id +
+                            ": размерность " + EmbeddingCodec.dimensionOf(blob));
+                }
+                target.remove(change.id);
+            }
+            version = Math.max(version, change.version);
+        }
+
+        if (!changes.isEmpty()) {
+            Log.d(TAG, "Применено изменений: " + changes.size() + " (добавлено/обновлено " +
+                    applied + "), версия " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Удаляет из галереи пользователей, строк которых больше нет среди активных.
+     * Без новых версий инвалидация могла прийти только от DELETE — тогда сверяем всегда.
+     * Считаются только строки размерности галереи: остальные loadAll пропускает.
+     */
+    int removeDeletedUsers(EmbeddingGallery target, boolean force) {
+        int[] lengths = EmbeddingCodec.blobLengths(target.getDimension());
+        if (!force && userDao.getActiveEmbeddingCount(lengths[0], lengths[1]) == target.size()) {
+            return 0;
+        }
+        Set<Integer> activeIds = new HashSet<>(userDao.getActiveEmbeddingUserIds());
+        int removed = 0;
+        for (int userId : target.getUserIds()) {
+            if (!activeIds.contains(userId)) {
+                target.remove(userId);
+                removed++;
+                Log.d(TAG, "Пользователь " + userId + " удалён из галереи");
+            }
+        }
+        return removed;
+    }
+}
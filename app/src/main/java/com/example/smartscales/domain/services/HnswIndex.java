@@ -0,0 +1,469 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+import com.example.smartscales.utils.EmbeddingCodec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Приближённый поиск ближайших соседей (HNSW) по нормализованным эмбеддингам.
+ * Удаление помечает узел как удалённый: он остаётся в графе для навигации,
+ * но не попадает в результаты; при накоплении удалённых граф перестраивается.
+ *
+ * Векторы узлов хранятся либо float, либо int8 с масштабом на узел (quantized) —
+ * для int8-галереи, чтобы индекс не возвращал ей float-память. Запрос всегда float:
+ * сходство с int8-узлом считается асимметрично, без квантования запроса.
+ *
+ * Синхронизацию обеспечивает владелец (FaceEmbeddingStore, Int8EmbeddingStore): запись под write lock,
+ * поиск может идти параллельно из нескольких потоков под read lock.
+ */
+class HnswIndex {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final float MAX_DELETED_RATIO = 0.2f;
+
+    private final int dimension;
+    private final int maxLinks;
+    private final int maxLinksLayer0;
+    private final int efConstruction;
+    private final boolean quantized;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private volatile int efSearch;
+
+    private float[] vectors; // float-режим
+    private byte[] codes;    // quantized: v ≈ scales[node] * codes[node * dimension + i]
+    private float[] scales;
+    private int[] nodeUserIds;
+    private int[][][] links; // links[node][level][0] — число соседей, далее id соседей
+    private boolean[] deleted;
+    private int nodeCount;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private final Map<Integer, Integer> nodeByUser = new HashMap<>();
+
+    private final ThreadLocal<VisitedMarks> visitedMarks = new ThreadLocal<VisitedMarks>() {
+        @Override
+        protected VisitedMarks initialValue() {
+            return new VisitedMarks();
+        }
+    };
+
+    HnswIndex(int dimension, int maxLinks, int efConstruction, int efSearch) {
+        this(dimension, maxLinks, efConstruction, efSearch, false);
+    }
+
+    /**
+     * @param quantized хранить векторы узлов в int8 (EmbeddingCodec.quantize), а не float
+     */
+    HnswIndex(int dimension, int maxLinks, int efConstruction, int efSearch, boolean quantized) {
+        this.dimension = dimension;
+        this.maxLinks = maxLinks;
+        this.maxLinksLayer0 = maxLinks * 2;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.quantized = quantized;
+        this.levelMultiplier = 1.0 / Math.log(maxLinks);
+        if (quantized) {
+            this.codes = new byte[INITIAL_CAPACITY * dimension];
+            this.scales = new float[INITIAL_CAPACITY];
+        } else {
+            this.vectors = new float[INITIAL_CAPACITY * dimension];
+        }
+        this.nodeUserIds = new int[INITIAL_CAPACITY];
+        this.links = new int[INITIAL_CAPACITY][][];
+        this.deleted = new boolean[INITIAL_CAPACITY];
+    }
+
+    void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    int size() {
+        return nodeCount - deletedCount;
+    }
+
+    /**
+     * Добавляет нормализованный вектор из source[offset..offset+dimension).
+     * Повторное добавление того же пользователя заменяет старый узел.
+     */
+    void add(int userId, float[] source, int offset) {
+        Integer existing = nodeByUser.get(userId);
+        if (existing != null) {
+            markDeleted(existing);
+            // Замена оставляет старый узел в графе — как и remove, чистим граф при накоплении
+            if (deletedCount > MAX_DELETED_RATIO * nodeCount) {
+                rebuild();
+            }
+        }
+
+        ensureCapacity(nodeCount + 1);
+        int node = nodeCount++;
+        if (quantized) {
+            scales[node] = EmbeddingCodec.quantize(source, offset, dimension, codes, node * dimension);
+        } else {
+            System.arraycopy(source, offset, vectors, node * dimension, dimension);
+        }
+        nodeUserIds[node] = userId;
+        nodeByUser.put(userId, node);
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxLinksLayer0 : maxLinks) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(source, offset, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            SearchResult candidates = searchLayer(source, offset, current, efConstruction, l);
+            int limit = l == 0 ? maxLinksLayer0 : maxLinks;
+            int count = Math.min(candidates.size(), maxLinks);
+            for (int i = 0; i < count; i++) {
+                int neighbour = candidates.getUserId(i);
+                connect(node, neighbour, l, maxLinks);
+                connect(neighbour, node, l, limit);
+            }
+            if (!candidates.isEmpty()) {
+                current = candidates.getUserId(0);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    boolean remove(int userId) {
+        Integer node = nodeByUser.remove(userId);
+        if (node == null) {
+            return false;
+        }
+        markDeleted(node);
+        if (deletedCount > MAX_DELETED_RATIO * nodeCount) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Поиск K ближайших; запрос может быть ненормализованным — сходство масштабируется через scale.
+     */
+    SearchResult search(float[] query, int k, float scale) {
+        if (entryPoint < 0 || size() == 0) {
+            return SearchResult.EMPTY;
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, 0, current, l);
+        }
+
+        SearchResult nodes = searchLayer(query, 0, current, Math.max(efSearch, k), 0);
+        TopKCollector collector = new TopKCollector(k);
+        for (int i = 0; i < nodes.size(); i++) {
+            int node = nodes.getUserId(i);
+            if (!deleted[node]) {
+                collector.offer(nodeUserIds[node], nodes.getSimilarity(i));
+            }
+        }
+        return collector.toResult(scale);
+    }
+
+    private int greedyClosest(float[] query, int queryOffset, int start, int level) {
+        int current = start;
+        float currentScore = dot(query, queryOffset, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float score = dot(query, queryOffset, candidate);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Поиск по одному слою; возвращает id узлов (а не пользователей) по убыванию сходства.
+     */
+    private SearchResult searchLayer(float[] query, int queryOffset, int entry, int ef, int level) {
+        VisitedMarks visited = visitedMarks.get();
+        visited.reset(nodeCount);
+
+        NodeQueue candidates = new NodeQueue(ef * 2);
+        TopKCollector results = new TopKCollector(ef);
+
+        float entryScore = dot(query, queryOffset, entry);
+        visited.mark(entry);
+        candidates.push(entry, entryScore);
+        results.offer(entry, entryScore);
+
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.peekScore();
+            if (candidateScore < results.threshold()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            if (level >= links[candidate].length) {
+                continue;
+            }
+            int[] neighbours = links[candidate][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!visited.mark(neighbour)) {
+                    continue;
+                }
+                float score = dot(query, queryOffset, neighbour);
+                if (score > results.threshold()) {
+                    candidates.push(neighbour, score);
+                    results.offer(neighbour, score);
+                }
+            }
+        }
+        return results.toResult(1f);
+    }
+
+    private void connect(int from, int to, int level, int limit) {
+        int[] list = links[from][level];
+        int count = list[0];
+        if (count < limit) {
+            list[count + 1] = to;
+            list[0] = count + 1;
+            return;
+        }
+
+        // Список полон — вытесняем самого дальнего соседа, если новый ближе
+        int worstIndex = -1;
+        float worstScore = nodeDot(from, to);
+        for (int i = 1; i <= count; i++) {
+            float score = nodeDot(from, list[i]);
+            if (score < worstScore) {
+                worstScore = score;
+                worstIndex = i;
+            }
+        }
+        if (worstIndex > 0) {
+            list[worstIndex] = to;
+        }
+    }
+
+    private void markDeleted(int node) {
+        if (!deleted[node]) {
+            deleted[node] = true;
+            deletedCount++;
+        }
+    }
+
+    private void rebuild() {
+        float[] oldVectors = vectors;
+        byte[] oldCodes = codes;
+        float[] oldScales = scales;
+        int[] oldUserIds = nodeUserIds;
+        boolean[] oldDeleted = deleted;
+        int oldCount = nodeCount;
+
+        int capacity = Math.max(INITIAL_CAPACITY, oldCount);
+        if (quantized) {
+            codes = new byte[capacity * dimension];
+            scales = new float[capacity];
+        } else {
+            vectors = new float[capacity * dimension];
+        }
+        nodeUserIds = new int[capacity];
+        links = new int[capacity][][];
+        deleted = new boolean[capacity];
+        nodeCount = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        nodeByUser.clear();
+
+        float[] row = quantized ? new float[dimension] : null;
+        for (int node = 0; node < oldCount; node++) {
+            if (oldDeleted[node]) {
+                continue;
+            }
+            if (quantized) {
+                int offset = node * dimension;
+                for (int i = 0; i < dimension; i++) {
+                    row[i] = oldCodes[offset + i] * oldScales[node];
+                }
+                add(oldUserIds[node], row, 0);
+            } else {
+                add(oldUserIds[node], oldVectors, node * dimension);
+            }
+        }
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return (int) Math.floor(-Math.log(u) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= nodeUserIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, nodeUserIds.length * 2);
+        if (quantized) {
+            codes = Arrays.copyOf(codes, capacity * dimension);
+            scales = Arrays.copyOf(scales, capacity);
+        } else {
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+        }
+        nodeUserIds = Arrays.copyOf(nodeUserIds, capacity);
+        links = Arrays.copyOf(links, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private float dot(float[] query, int queryOffset, int node) {
+        int offset = node * dimension;
+        float sum = 0;
+        if (quantized) {
+            final byte[] c = codes;
+            for (int i = 0; i < dimension; i++) {
+                sum += query[queryOffset + i] * c[offset + i];
+            }
+            return sum * scales[node];
+        }
+        final float[] v = vectors;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[queryOffset + i] * v[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Сходство двух узлов графа (для отбора соседей)
+     */
+    private float nodeDot(int a, int b) {
+        if (!quantized) {
+            return dot(vectors, a * dimension, b);
+        }
+        final byte[] c = codes;
+        int offsetA = a * dimension;
+        int offsetB = b * dimension;
+        int acc = 0;
+        for (int i = 0; i < dimension; i++) {
+            acc += c[offsetA + i] * c[offsetB + i];
+        }
+        return acc * scales[a] * scales[b];
+    }
+
+    /**
+     * Отметки посещённых узлов с номером поколения: сброс без очистки массива.
+     */
+    private static final class VisitedMarks {
+        private int[] marks = new int[INITIAL_CAPACITY];
+        private int generation;
+
+        void reset(int nodeCount) {
+            if (marks.length < nodeCount) {
+                marks = new int[Math.max(nodeCount, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return true, если узел ещё не был посещён
+         */
+        boolean mark(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * Max-куча кандидатов (узел, сходство) на примитивных массивах.
+     */
+    private static final class NodeQueue {
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        NodeQueue(int capacity) {
+            nodes = new int[Math.max(capacity, 4)];
+            scores = new float[nodes.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] >= score) {
+                    break;
+                }
+                nodes[index] = nodes[parent];
+                scores[index] = scores[parent];
+                index = parent;
+            }
+            nodes[index] = node;
+            scores[index] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            float lastScore = scores[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] > scores[child]) {
+                    child++;
+                }
+                if (scores[child] <= lastScore) {
+                    break;
+                }
+                nodes[index] = nodes[child];
+                scores[index] = scores[child];
+                index = child;
+            }
+            nodes[index] = lastNode;
+            scores[index] = lastScore;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+import com.example.smartscales.utils.EmbeddingCodec;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Галерея с int8-квантованием: один байт на измерение и масштаб на вектор,
+ * то есть в 4 раза меньше памяти, чем у FaceEmbeddingStore.
+ * Поиск — целочисленное скалярное произведение с квантованным запросом;
+ * затем лучшие rescoreDepth кандидатов пересчитываются с исходным float-запросом
+ * по тем же int8-кодам. Это убирает ошибку квантования запроса, но не галереи:
+ * float-строк галерея не хранит, в этом и экономия памяти.
+ *
+ * Начиная с exactSearchThreshold поиск идёт по HNSW, который тоже хранит int8-коды
+ * (HnswIndex quantized) и считает сходство с float-запросом. Порог проверяется
+ * при каждом put, то есть и на дельтах GallerySynchronizer во время работы.
+ */
+public class Int8EmbeddingStore implements EmbeddingGallery {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int DEFAULT_EXACT_SEARCH_THRESHOLD = 1000;
+    private static final int HNSW_MAX_LINKS = 16;
+    private static final int HNSW_EF_CONSTRUCTION = 100;
+    private static final int DEFAULT_EF_SEARCH = 64;
+
+    private final int dimension;
+    private final int rescoreDepth;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<byte[]> queryCodes = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[dimension];
+        }
+    };
+
+    private byte[] codes;
+    private float[] scales;
+    private int[] userIds;
+    private int size;
+    private final UserRowIndex rowIndex = new UserRowIndex();
+
+    private HnswIndex index;
+    private int exactSearchThreshold = DEFAULT_EXACT_SEARCH_THRESHOLD;
+    private int efSearch = DEFAULT_EF_SEARCH;
+
+    /**
+     * @param rescoreDepth число кандидатов для пересчёта с float-запросом; 0 — без пересчёта
+     */
+    public Int8EmbeddingStore(int dimension, int rescoreDepth) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Invalid embedding dimension: " + dimension);
+        }
+        this.dimension = dimension;
+        this.rescoreDepth = rescoreDepth;
+        this.codes = new byte[INITIAL_CAPACITY * dimension];
+        this.scales = new float[INITIAL_CAPACITY];
+        this.userIds = new int[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public void put(int userId, float[] embedding) {
+        checkDimension(embedding);
+        lock.writeLock().lock();
+        try {
+            int row = rowFor(userId);
+            scales[row] = EmbeddingCodec.quantize(embedding, 0, dimension, codes, row * dimension);
+            if (index != null) {
+                index.add(userId, embedding, 0);
+            } else if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(int userId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowIndex.remove(userId, userIds, size);
+            if (row < 0) {
+                return false;
+            }
+            int last = --size;
+            if (row != last) {
+                System.arraycopy(codes, last * dimension, codes, row * dimension, dimension);
+                scales[row] = scales[last];
+            }
+            if (index != null) {
+                index.remove(userId);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            size = 0;
+            rowIndex.clear();
+            index = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Размер галереи, с которого включается HNSW, и ширина поиска efSearch
+     */
+    public void setIndexParameters(int exactSearchThreshold, int efSearch) {
+        lock.writeLock().lock();
+        try {
+            this.exactSearchThreshold = exactSearchThreshold;
+            this.efSearch = efSearch;
+            if (index != null) {
+                index.setEfSearch(efSearch);
+            } else if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(int userId) {
+        lock.readLock().lock();
+        try {
+            return rowIndex.get(userId) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(userIds, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Векторы деквантуются: при повторном put квантование даёт те же коды
+     */
+    @Override
+    public Rows exportRows() {
+        lock.readLock().lock();
+        try {
+            float[] vectors = new float[size * dimension];
+            for (int row = 0, offset = 0; row < size; row++, offset += dimension) {
+                float scale = scales[row];
+                for (int i = 0; i < dimension; i++) {
+                    vectors[offset + i] = codes[offset + i] * scale;
+                }
+            }
+            return new Rows(dimension, Arrays.copyOf(userIds, size), vectors);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadRows(Rows rows) {
+        if (rows.dimension != dimension) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " + dimension +
+                    ", got " + rows.dimension);
+        }
+        int count = rows.size();
+        lock.writeLock().lock();
+        try {
+            codes = new byte[Math.max(count, INITIAL_CAPACITY) * dimension];
+            scales = new float[Math.max(count, INITIAL_CAPACITY)];
+            userIds = Arrays.copyOf(rows.userIds, Math.max(count, INITIAL_CAPACITY));
+            size = count;
+            rowIndex.clear();
+            for (int row = 0, offset = 0; row < count; row++, offset += dimension) {
+                rowIndex.put(userIds[row], row);
+                scales[row] = EmbeddingCodec.quantize(rows.vectors, offset, dimension, codes, offset);
+            }
+            index = null;
+            if (size >= exactSearchThreshold) {
+                buildIndex();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SearchResult searchNearest(float[] query, int k) {
+        checkDimension(query);
+        byte[] queryCodes = this.queryCodes.get();
+        float queryScale = EmbeddingCodec.quantize(query, 0, dimension, queryCodes, 0);
+        if (queryScale == 0) {
+            return SearchResult.EMPTY;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return SearchResult.EMPTY;
+            }
+            int resultSize = Math.min(k, size);
+            if (index != null && size >= exactSearchThreshold) {
+                // HNSW уже считает сходство float-запроса с int8-кодами — пересчёт не нужен
+                return index.search(query, resultSize, 1f / norm(query));
+            }
+            int depth = Math.min(size, Math.max(resultSize, rescoreDepth));
+
+            // Этап 1: целочисленный проход, в куче — номера строк
+            final byte[] c = codes;
+            final float[] s = scales;
+            final int d = dimension;
+            TopKCollector candidates = ParallelScan.scan(size, depth, (from, to, out) -> {
+                for (int row = from, offset = from * d; row < to; row++, offset += d) {
+                    int acc = 0;
+                    for (int i = 0; i < d; i++) {
+                        acc += queryCodes[i] * c[offset + i];
+                    }
+                    float score = acc * s[row];
+                    if (score > out.threshold()) {
+                        out.offer(row, score);
+                    }
+                }
+            });
+            SearchResult rows = candidates.toResult(queryScale);
+
+            // Этап 2: пересчёт с исходным float-запросом по тем же кодам либо просто перевод строк в id
+            TopKCollector result = new TopKCollector(resultSize);
+            if (rescoreDepth > 0) {
+                float queryNorm = norm(query);
+                for (int i = 0; i < rows.size(); i++) {
+                    int row = rows.getUserId(i);
+                    int offset = row * d;
+                    float dot = 0;
+                    for (int j = 0; j < d; j++) {
+                        dot += query[j] * c[offset + j];
+                    }
+                    result.offer(userIds[row], dot * scales[row] / queryNorm);
+                }
+            } else {
+                for (int i = 0; i < rows.size(); i++) {
+                    result.offer(userIds[rows.getUserId(i)], rows.getSimilarity(i));
+                }
+            }
+            return result.toResult(1f);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void buildIndex() {
+        index = new HnswIndex(dimension, HNSW_MAX_LINKS, HNSW_EF_CONSTRUCTION, efSearch, true);
+        float[] row = new float[dimension];
+        for (int r = 0, offset = 0; r < size; r++, offset += dimension) {
+            for (int i = 0; i < dimension; i++) {
+                row[i] = codes[offset + i] * scales[r];
+            }
+            index.add(userIds[r], row, 0);
+        }
+    }
+
+    private int rowFor(int userId) {
+        int row = rowIndex.get(userId);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            userIds[row] = userId;
+            rowIndex.put(userId, row);
+        }
+        return row;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= userIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, userIds.length * 2);
+        userIds = Arrays.copyOf(userIds, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+        codes = Arrays.copyOf(codes, capacity * dimension);
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " + dimension +
+                    ", got " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private static float norm(float[] vector) {
+        float sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.smartscales.domain.services;
+
+import android.util.Log;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Ограниченный пул интерпретаторов одной модели. У каждого свой заранее выделенный
+ * direct-буфер входа и массив выхода, так что параллельные регистрация и распознавание
+ * не ждут друг друга на одном Interpreter.
+ *
+ * Первый интерпретатор создаётся сразу (по нему проверяются формы тензоров);
+ * прогрев и создание остальных идут в фоне после start(), в пул они попадают по готовности.
+ * Делегат и число потоков у всех интерпретаторов — из DelegateSelector.
+ */
+class InterpreterPool {
+    private static final String TAG = "InterpreterPool";
+    private static final int MAX_POOL_SIZE = 4;
+    static final int BATCH_SIZE = 4; // Фиксированный батч: 2..BATCH_SIZE лиц дополняются до него
+
+    /**
+     * Интерпретаторы с собственными буферами; используются одним потоком между acquire и release.
+     * Одно лицо идёт в основной интерпретатор [1, H, W, C], несколько — в отдельный
+     * [BATCH_SIZE, H, W, C]. Формы тензоров задаются один раз, так что чередование одиночных
+     * и групповых вызовов не перевыделяет нативные тензоры и не переприменяет делегат
+     */
+    static final class Slot {
+        final Interpreter interpreter;
+        final Batch single;
+        private final InterpreterPool pool;
+        private final int[] inputShape;
+        private final int itemBytes;
+        private final int embeddingSize;
+        private final int outputItemBytes; // 0 — выход float, читается в float[][]
+        private Interpreter batchInterpreter; // Создаётся при первом групповом вызове
+        private Batch batched;
+
+        private Slot(InterpreterPool pool, Interpreter interpreter) {
+            this.pool = pool;
+            this.interpreter = interpreter;
+            this.inputShape = interpreter.getInputTensor(0).shape();
+            this.itemBytes = interpreter.getInputTensor(0).numBytes();
+            Tensor output = interpreter.getOutputTensor(0);
+            int[] outputShape = output.shape();
+            this.embeddingSize = outputShape[outputShape.length - 1];
+            this.outputItemBytes = output.dataType() == DataType.FLOAT32 ? 0 : output.numBytes();
+            this.single = new Batch(1, itemBytes, embeddingSize, outputItemBytes);
+        }
+
+        /**
+         * Буферы для n лиц (1..BATCH_SIZE); при n > 1 — на BATCH_SIZE, хвост после n не читается
+         */
+        Batch batch(int n) {
+            if (n <= 1) {
+                return single;
+            }
+            if (n > BATCH_SIZE) {
+                throw new IllegalArgumentException("Batch too large: " + n);
+            }
+            if (batched == null) {
+                Interpreter created = pool.newInterpreter();
+                int[] shape = inputShape.clone();
+                shape[0] = BATCH_SIZE;
+                created.resizeInput(0, shape);
+                created.allocateTensors();
+                batchInterpreter = created;
+                batched = new Batch(BATCH_SIZE, itemBytes, embeddingSize, outputItemBytes);
+            }
+            return batched;
+        }
+
+        void run(Batch batch) {
+            Interpreter target = batch == single ? interpreter : batchInterpreter;
+            target.run(batch.input, batch.outputTarget());
+        }
+
+        private void close() {
+            interpreter.close();
+            if (batchInterpreter != null) {
+                batchInterpreter.close();
+            }
+        }
+    }
+
+    static final class Batch {
+        final ByteBuffer input;
+        final FloatBuffer inputFloats; // Представление input для float-моделей, создаётся один раз
+        final float[][] output;        // Выход float-модели
+        final ByteBuffer outputBytes;  // Выход квантованной модели, иначе null
+
+        private Batch(int size, int itemBytes, int embeddingSize, int outputItemBytes) {
+            this.input = ByteBuffer.allocateDirect(size * itemBytes).order(ByteOrder.nativeOrder());
+            this.inputFloats = input.asFloatBuffer();
+            if (outputItemBytes > 0) {
+                this.output = null;
+                this.outputBytes = ByteBuffer.allocateDirect(size * outputItemBytes)
+                        .order(ByteOrder.nativeOrder());
+            } else {
+                this.output = new float[size][embeddingSize];
+                this.outputBytes = null;
+            }
+        }
+
+        /**
+         * Приёмник для Interpreter.run
+         */
+        Object outputTarget() {
+            if (outputBytes != null) {
+                outputBytes.rewind();
+                return outputBytes;
+            }
+            return output;
+        }
+    }
+
+    private final MappedByteBuffer model;
+    private final DelegateSelector.Config config;
+    private final int size;
+    private final BlockingQueue<Slot> idle;
+    private final List<Slot> all = new ArrayList<>();
+    private final Slot first;
+    private Thread warmUpThread;
+    private volatile boolean closed;
+
+    /**
+     * @param size число интерпретаторов; 0 — по числу ядер (см. defaultSize)
+     */
+    InterpreterPool(MappedByteBuffer model, int size, DelegateSelector.Config config) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.model = model;
+        this.config = config;
+        this.size = size > 0 ? size : defaultSize(cores, config.threads);
+        this.idle = new ArrayBlockingQueue<>(this.size);
+
+        first = createSlot();
+        Log.i(TAG, "Пул интерпретаторов: " + this.size + " × " + config);
+    }
+
+    /**
+     * Запускает прогрев и создание остальных интерпретаторов. Вызывать после проверки
+     * тензоров первого: до этого пул можно закрыть, не пересекаясь с фоновым потоком
+     */
+    synchronized void start() {
+        if (closed || warmUpThread != null) {
+            return;
+        }
+        warmUpThread = new Thread(this::warmUp, "InterpreterPool-warmup");
+        warmUpThread.setPriority(Thread.MIN_PRIORITY);
+        warmUpThread.start();
+    }
+
+    /**
+     * Сколько интерпретаторов с threads потоками помещается на ядра, но не больше MAX_POOL_SIZE
+     */
+    static int defaultSize(int cores, int threads) {
+        return Math.max(1, Math.min(MAX_POOL_SIZE, cores / threads));
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int[] getInputShape() {
+        return first.interpreter.getInputTensor(0).shape();
+    }
+
+    int getEmbeddingSize() {
+        return first.embeddingSize;
+    }
+
+    Tensor getInputTensor() {
+        return first.interpreter.getInputTensor(0);
+    }
+
+    Tensor getOutputTensor() {
+        return first.interpreter.getOutputTensor(0);
+    }
+
+    /**
+     * Берёт свободный интерпретатор, при необходимости ждёт
+     */
+    Slot acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    void release(Slot slot) {
+        idle.offer(slot);
+    }
+
+    /**
+     * Останавливает прогрев (дожидается текущего run) и закрывает все интерпретаторы
+     */
+    void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = warmUpThread;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            for (Slot slot : all) {
+                slot.close();
+            }
+            all.clear();
+            idle.clear();
+        }
+    }
+
+    private synchronized Slot createSlot() {
+        Slot slot = new Slot(this, newInterpreter());
+        all.add(slot);
+        return slot;
+    }
+
+    private synchronized Interpreter newInterpreter() {
+        if (closed) {
+            throw new IllegalStateException("Interpreter pool is closed");
+        }
+        Interpreter.Options options = new Interpreter.Options();
+        config.applyTo(options);
+        return new Interpreter(model, options);
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < size && !closed; i++) {
+            try {
+                Slot slot = i == 0 ? first : createSlot();
+                // Первый run выделяет тензоры и готовит ядра — не на кадре пользователя
+                slot.run(slot.single);
+                idle.offer(slot);
+            } catch (RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                Log.e(TAG, "Не удалось подготовить интерпретатор " + (i + 1) + ": " + e.getMessage(), e);
+                if (i == 0) {
+                    idle.offer(first); // Хотя бы один интерпретатор должен быть доступен
+                }
+                return;
+            }
+        }
+    }
+}
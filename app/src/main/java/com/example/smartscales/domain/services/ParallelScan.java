@@ -0,0 +1,92 @@
+package com.example.smartscales.domain.services;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный проход по упакованной галерее: строки делятся на куски,
+ * каждый кусок сканируется в свой TopKCollector, результаты сливаются.
+ * Для небольших галерей накладные расходы fork-join не окупаются —
+ * ниже MIN_PARALLEL_ROWS проход идёт в вызывающем потоке.
+ *
+ * Float-галерея с ANN_EXACT_SEARCH_THRESHOLD (1000) строк уходит в HNSW и сканом
+ * не пользуется, поэтому порог выбран чуть выше него: параллельный проход — для галерей,
+ * которые ищут полным перебором и на больших размерах (int8, PQ, float с выключенным HNSW).
+ *
+ * Вызывающий держит read lock галереи на всё время scan(), поэтому
+ * рабочие потоки читают неизменяемые на это время массивы.
+ */
+final class ParallelScan {
+    static final int MIN_PARALLEL_ROWS = 2048;
+    static final int MIN_CHUNK_ROWS = 512;
+
+    private static volatile ForkJoinPool pool;
+
+    interface RangeScanner {
+        void scan(int from, int to, TopKCollector collector);
+    }
+
+    private ParallelScan() {
+    }
+
+    static TopKCollector scan(int rows, int k, RangeScanner scanner) {
+        return scan(rows, k, scanner, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * То же с заданным числом потоков (в тестах — независимо от числа ядер машины)
+     */
+    static TopKCollector scan(int rows, int k, RangeScanner scanner, int parallelism) {
+        if (rows < MIN_PARALLEL_ROWS || parallelism <= 1) {
+            TopKCollector collector = new TopKCollector(k);
+            scanner.scan(0, rows, collector);
+            return collector;
+        }
+        int chunk = Math.max(MIN_CHUNK_ROWS, rows / (parallelism * 4));
+        return pool(parallelism).invoke(new ScanTask(scanner, 0, rows, k, chunk));
+    }
+
+    private static ForkJoinPool pool(int parallelism) {
+        if (pool == null) {
+            synchronized (ParallelScan.class) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism);
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static final class ScanTask extends RecursiveTask<TopKCollector> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeScanner scanner;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final int chunk;
+
+        ScanTask(RangeScanner scanner, int from, int to, int k, int chunk) {
+            this.scanner = scanner;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected TopKCollector compute() {
+            if (to - from <= chunk) {
+                TopKCollector collector = new TopKCollector(k);
+                scanner.scan(from, to, collector);
+                return collector;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(scanner, from, middle, k, chunk);
+            left.fork();
+            TopKCollector right = new ScanTask(scanner, middle, to, k, chunk).compute();
+            right.addAll(left.join());
+            return right;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Сжатая галерея на product quantization: getCodeSize() байт на пользователя
+ * (32 байта для 128-мерного эмбеддинга против 512 у float32).
+ * Сходство приближённое — сумма значений из таблицы, построенной по запросу.
+ */
+public class PqEmbeddingStore implements EmbeddingGallery {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final ProductQuantizer quantizer;
+    private final int codeSize;
+    private final int centroidCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private byte[] codes;
+    private int[] userIds;
+    private int size;
+    private final UserRowIndex rowIndex = new UserRowIndex();
+
+    public PqEmbeddingStore(ProductQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.codeSize = quantizer.getCodeSize();
+        this.centroidCount = quantizer.getCentroidCount();
+        this.codes = new byte[INITIAL_CAPACITY * codeSize];
+        this.userIds = new int[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public void put(int userId, float[] embedding) {
+        checkDimension(embedding);
+        lock.writeLock().lock();
+        try {
+            int row = rowIndex.get(userId);
+            if (row < 0) {
+                ensureCapacity(size + 1);
+                row = size++;
+                userIds[row] = userId;
+                rowIndex.put(userId, row);
+            }
+            quantizer.encode(embedding, 0, codes, row * codeSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(int userId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowIndex.remove(userId, userIds, size);
+            if (row < 0) {
+                return false;
+            }
+            int last = --size;
+            if (row != last) {
+                System.arraycopy(codes, last * codeSize, codes, row * codeSize, codeSize);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            size = 0;
+            rowIndex.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getDimension() {
+        return quantizer.getDimension();
+    }
+
+    @Override
+    public boolean contains(int userId) {
+        lock.readLock().lock();
+        try {
+            return rowIndex.get(userId) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(userIds, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Коды PQ необратимы: в снимок идут векторы, собранные из центроидов.
+     * При загрузке они кодируются заново — это те же или соседние центроиды
+     */
+    @Override
+    public Rows exportRows() {
+        lock.readLock().lock();
+        try {
+            int dimension = quantizer.getDimension();
+            float[] vectors = new float[size * dimension];
+            for (int row = 0; row < size; row++) {
+                quantizer.decode(codes, row * codeSize, vectors, row * dimension);
+            }
+            return new Rows(dimension, Arrays.copyOf(userIds, size), vectors);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadRows(Rows rows) {
+        int dimension = quantizer.getDimension();
+        if (rows.dimension != dimension) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " + dimension +
+                    ", got " + rows.dimension);
+        }
+        int count = rows.size();
+        lock.writeLock().lock();
+        try {
+            codes = new byte[Math.max(count, INITIAL_CAPACITY) * codeSize];
+            userIds = Arrays.copyOf(rows.userIds, Math.max(count, INITIAL_CAPACITY));
+            size = count;
+            rowIndex.clear();
+            for (int row = 0; row < count; row++) {
+                rowIndex.put(userIds[row], row);
+                quantizer.encode(rows.vectors, row * dimension, codes, row * codeSize);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SearchResult searchNearest(float[] query, int k) {
+        checkDimension(query);
+        float sum = 0;
+        for (float v : query) {
+            sum += v * v;
+        }
+        if (sum == 0) {
+            return SearchResult.EMPTY;
+        }
+
+        float[] table = new float[quantizer.getTableSize()];
+        quantizer.computeDistanceTable(query, table);
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return SearchResult.EMPTY;
+            }
+            final byte[] c = codes;
+            final int[] ids = userIds;
+            final int m = codeSize;
+            final int stride = centroidCount;
+            TopKCollector collector = ParallelScan.scan(size, Math.min(k, size), (from, to, out) -> {
+                for (int row = from, offset = from * m; row < to; row++, offset += m) {
+                    float score = 0;
+                    for (int i = 0, tableOffset = 0; i < m; i++, tableOffset += stride) {
+                        score += table[tableOffset + (c[offset + i] & 0xFF)];
+                    }
+                    if (score > out.threshold()) {
+                        out.offer(ids[row], score);
+                    }
+                }
+            });
+            return collector.toResult((float) (1.0 / Math.sqrt(sum)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= userIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, userIds.length * 2);
+        userIds = Arrays.copyOf(userIds, capacity);
+        codes = Arrays.copyOf(codes, capacity * codeSize);
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != quantizer.getDimension()) {
+            throw new IllegalArgumentException("Embedding dimension mismatch: expected " +
+                    quantizer.getDimension() + ", got " + (vector == null ? "null" : vector.length));
+        }
+    }
+}
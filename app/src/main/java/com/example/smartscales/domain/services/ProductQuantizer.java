@@ -0,0 +1,271 @@
+package com.example.smartscales.domain.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Кодбук product quantization: вектор делится на subspaces подвекторов,
+ * каждый кодируется индексом ближайшего центроида (1 байт).
+ * Сходство с запросом считается асимметрично по таблице скалярных произведений,
+ * которая строится один раз на запрос.
+ */
+public class ProductQuantizer {
+    private static final int FILE_MAGIC = 0x50514342; // "PQCB"
+    private static final int FILE_VERSION = 1;
+    private static final int MAX_CENTROIDS = 256;
+    private static final int MAX_TRAINING_VECTORS = 4096;
+    private static final int KMEANS_ITERATIONS = 10;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    private final int centroidCount;
+    private final float[] centroids; // [subspace][centroid][subDimension]
+
+    private ProductQuantizer(int dimension, int subspaces, int centroidCount, float[] centroids) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.centroidCount = centroidCount;
+        this.centroids = centroids;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Размер кода одного вектора в байтах
+     */
+    public int getCodeSize() {
+        return subspaces;
+    }
+
+    public int getCentroidCount() {
+        return centroidCount;
+    }
+
+    /**
+     * Обучение k-means по подпространствам на нормализованных векторах.
+     */
+    public static ProductQuantizer train(List<float[]> vectors, int dimension, int subspaces) {
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException("Dimension " + dimension +
+                    " is not divisible into " + subspaces + " subspaces");
+        }
+        if (vectors.isEmpty()) {
+            throw new IllegalArgumentException("No training vectors");
+        }
+
+        Random random = new Random(42);
+        int n = Math.min(vectors.size(), MAX_TRAINING_VECTORS);
+        float[] data = new float[n * dimension];
+        int[] sample = sampleIndices(vectors.size(), n, random);
+        for (int i = 0; i < n; i++) {
+            float[] vector = vectors.get(sample[i]);
+            System.arraycopy(vector, 0, data, i * dimension, dimension);
+            normalize(data, i * dimension, dimension);
+        }
+
+        int subDimension = dimension / subspaces;
+        int centroidCount = Math.min(MAX_CENTROIDS, n);
+        float[] centroids = new float[subspaces * centroidCount * subDimension];
+        int[] assignment = new int[n];
+        float[] sums = new float[centroidCount * subDimension];
+        int[] counts = new int[centroidCount];
+
+        for (int m = 0; m < subspaces; m++) {
+            int base = m * centroidCount * subDimension;
+            int column = m * subDimension;
+
+            int[] init = sampleIndices(n, centroidCount, random);
+            for (int c = 0; c < centroidCount; c++) {
+                System.arraycopy(data, init[c] * dimension + column, centroids, base + c * subDimension, subDimension);
+            }
+
+            for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+                for (int i = 0; i < n; i++) {
+                    assignment[i] = nearestCentroid(centroids, base, centroidCount, subDimension,
+                            data, i * dimension + column);
+                }
+
+                Arrays.fill(sums, 0);
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < n; i++) {
+                    int c = assignment[i];
+                    counts[c]++;
+                    for (int j = 0; j < subDimension; j++) {
+                        sums[c * subDimension + j] += data[i * dimension + column + j];
+                    }
+                }
+                for (int c = 0; c < centroidCount; c++) {
+                    if (counts[c] == 0) {
+                        // Пустой кластер — переинициализируем случайной точкой
+                        int i = random.nextInt(n);
+                        System.arraycopy(data, i * dimension + column, centroids, base + c * subDimension, subDimension);
+                        continue;
+                    }
+                    for (int j = 0; j < subDimension; j++) {
+                        centroids[base + c * subDimension + j] = sums[c * subDimension + j] / counts[c];
+                    }
+                }
+            }
+        }
+
+        return new ProductQuantizer(dimension, subspaces, centroidCount, centroids);
+    }
+
+    /**
+     * Кодирует src[srcOffset..) (нормализуется на лету) в dst[dstOffset..dstOffset+codeSize)
+     */
+    public void encode(float[] src, int srcOffset, byte[] dst, int dstOffset) {
+        float sum = 0;
+        for (int i = srcOffset; i < srcOffset + dimension; i++) {
+            sum += src[i] * src[i];
+        }
+        float inverseNorm = sum > 0 ? (float) (1.0 / Math.sqrt(sum)) : 0;
+
+        float[] sub = new float[subDimension];
+        for (int m = 0; m < subspaces; m++) {
+            for (int j = 0; j < subDimension; j++) {
+                sub[j] = src[srcOffset + m * subDimension + j] * inverseNorm;
+            }
+            int base = m * centroidCount * subDimension;
+            dst[dstOffset + m] = (byte) nearestCentroid(centroids, base, centroidCount, subDimension, sub, 0);
+        }
+    }
+
+    /**
+     * Собирает приближённый вектор из центроидов кода src[srcOffset..srcOffset+codeSize)
+     */
+    public void decode(byte[] src, int srcOffset, float[] dst, int dstOffset) {
+        for (int m = 0; m < subspaces; m++) {
+            int centroid = src[srcOffset + m] & 0xFF;
+            System.arraycopy(centroids, (m * centroidCount + centroid) * subDimension,
+                    dst, dstOffset + m * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * Таблица асимметричных расстояний: table[m * centroidCount + c] = <query_m, centroid_{m,c}>.
+     * Запрос не нормализуется — сходство масштабируется вызывающим.
+     */
+    public void computeDistanceTable(float[] query, float[] table) {
+        for (int m = 0; m < subspaces; m++) {
+            int queryOffset = m * subDimension;
+            int base = m * centroidCount * subDimension;
+            for (int c = 0; c < centroidCount; c++) {
+                int offset = base + c * subDimension;
+                float dot = 0;
+                for (int j = 0; j < subDimension; j++) {
+                    dot += query[queryOffset + j] * centroids[offset + j];
+                }
+                table[m * centroidCount + c] = dot;
+            }
+        }
+    }
+
+    public int getTableSize() {
+        return subspaces * centroidCount;
+    }
+
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(subspaces);
+            out.writeInt(centroidCount);
+            for (float value : centroids) {
+                out.writeFloat(value);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getName());
+        }
+    }
+
+    /**
+     * @return кодбук или null, если файла нет
+     */
+    public static ProductQuantizer load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unsupported codebook file: " + file.getName());
+            }
+            int dimension = in.readInt();
+            int subspaces = in.readInt();
+            int centroidCount = in.readInt();
+            if (subspaces <= 0 || dimension % subspaces != 0
+                    || centroidCount <= 0 || centroidCount > MAX_CENTROIDS) {
+                throw new IOException("Corrupted codebook header");
+            }
+            float[] centroids = new float[dimension * centroidCount];
+            for (int i = 0; i < centroids.length; i++) {
+                centroids[i] = in.readFloat();
+            }
+            return new ProductQuantizer(dimension, subspaces, centroidCount, centroids);
+        }
+    }
+
+    private static int nearestCentroid(float[] centroids, int base, int centroidCount, int subDimension,
+                                       float[] vector, int offset) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < centroidCount; c++) {
+            int centroidOffset = base + c * subDimension;
+            float distance = 0;
+            for (int j = 0; j < subDimension; j++) {
+                float diff = vector[offset + j] - centroids[centroidOffset + j];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static int[] sampleIndices(int total, int count, Random random) {
+        int[] indices = new int[total];
+        for (int i = 0; i < total; i++) {
+            indices[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(total - i);
+            int tmp = indices[i];
+            indices[i] = indices[j];
+            indices[j] = tmp;
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    private static void normalize(float[] data, int offset, int length) {
+        float sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += data[i] * data[i];
+        }
+        float norm = (float) Math.sqrt(sum);
+        if (norm > 0) {
+            for (int i = offset; i < offset + length; i++) {
+                data[i] /= norm;
+            }
+        }
+    }
+}
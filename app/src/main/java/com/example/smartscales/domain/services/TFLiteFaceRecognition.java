@@ -1,638 +1,245 @@
-//package com.example.smartscales.domain.services;
-//
-//import android.content.Context;
-//import android.content.res.AssetFileDescriptor;
-//import android.graphics.Bitmap;
-//import android.graphics.Matrix;
-//import android.graphics.RectF;
-//import android.util.Log;
-//import androidx.annotation.NonNull;
-//import com.google.mlkit.vision.common.InputImage;
-//import com.google.mlkit.vision.face.Face;
-//import com.google.mlkit.vision.face.FaceDetection;
-//import com.google.mlkit.vision.face.FaceDetector;
-//import com.google.mlkit.vision.face.FaceDetectorOptions;
-//import com.example.smartscales.data.models.User;
-//import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
-//import org.tensorflow.lite.Interpreter;
-//import java.io.File;
-//import java.io.FileInputStream;
-//import java.io.FileOutputStream;
-//import java.io.IOException;
-//import java.io.InputStream;
-//import java.nio.ByteBuffer;
-//import java.nio.ByteOrder;
-//import java.nio.MappedByteBuffer;
-//import java.nio.channels.FileChannel;
-//import java.util.ArrayList;
-//import java.util.HashMap;
-//import java.util.List;
-//import java.util.Map;
-//import java.util.concurrent.ExecutorService;
-//import java.util.concurrent.Executors;
-//import java.util.concurrent.atomic.AtomicInteger;
-//
-//public class TFLiteFaceRecognition implements FaceRecognitionInterface {
-//    private static final String TAG = "TFLiteFaceRecognition";
+package com.example.smartscales.domain.services;
 
-//    private static final int INPUT_IMAGE_SIZE = 112;
-//    private static final int EMBEDDING_SIZE = 512; // MobileFaceNet эмбеддинг размер
-//    private static final float RECOGNITION_THRESHOLD = 0.6f;
-//    private static final int MAX_REGISTERED_USERS = 20;
-//
-//    private FaceDetector faceDetector;
-//    private Interpreter tfliteInterpreter;
-//    private Context context;
-//    private ExecutorService executorService;
-//    private boolean initialized = false;
-//
-//    private Map<Integer, float[]> registeredEmbeddings; // userId -> embedding
-//    private Map<Integer, String> embeddingFiles; // userId -> путь к файлу
-//
-//    private AtomicInteger userCounter = new AtomicInteger(1);
-//
-//    public TFLiteFaceRecognition() {
-//        executorService = Executors.newSingleThreadExecutor();
-//        registeredEmbeddings = new HashMap<>();
-//        embeddingFiles = new HashMap<>();
-//    }
-//
-//    @Override
-//    public void initialize(Context context) {
-//        this.context = context;
-//
-//        executorService.execute(() -> {
-//            try {
-//                initializeFaceDetector();
-//
-//                if (!loadTFLiteModel()) {
-//                    Log.e(TAG, "Failed to load TFLite model, using mock mode");
-//                }
-//
-//                loadRegisteredEmbeddings();
-//
-//                initialized = true;
-//                Log.i(TAG, "Face Recognition initialized successfully");
-//
-//            } catch (Exception e) {
-//                Log.e(TAG, "Initialization failed: " + e.getMessage(), e);
-//            }
-//        });
-//    }
-//
-//    private void initializeFaceDetector() {
-//        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-//                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-//                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-//                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
-//                .setMinFaceSize(0.15f)
-//                .build();
-//
-//        faceDetector = FaceDetection.getClient(options);
-//    }
-//
-//    private boolean loadTFLiteModel() {
-//        try {
-//            String modelFilename = "mobilefacenet.tflite";
-//
-//            try {
-//                InputStream inputStream = context.getAssets().open(modelFilename);
-//                inputStream.close();
-//            } catch (IOException e) {
-//                Log.e(TAG, "Model file not found: " + modelFilename);
-//                return false;
-//            }
-//
-//            MappedByteBuffer modelBuffer = loadModelFile(modelFilename);
-//
-//            Interpreter.Options options = new Interpreter.Options();
-//            options.setNumThreads(4);
-//
-//            try {
-//                tfliteInterpreter = new Interpreter(modelBuffer, options);
-//                Log.i(TAG, "TFLite model loaded successfully");
-//                return true;
-//            } catch (Exception e) {
-//                Log.e(TAG, "Error creating TFLite interpreter: " + e.getMessage());
-//                return false;
-//            }
-//
-//        } catch (IOException e) {
-//            Log.e(TAG, "IO error loading model: " + e.getMessage());
-//            return false;
-//        }
-//    }
-//
-//    private MappedByteBuffer loadModelFile(String modelFilename) throws IOException {
-//        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFilename);
-//        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-//        FileChannel fileChannel = inputStream.getChannel();
-//        long startOffset = fileDescriptor.getStartOffset();
-//        long declaredLength = fileDescriptor.getDeclaredLength();
-//        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-//    }
-//
-//    @Override
-//    public void registerUser(String name, Bitmap faceImage, FaceRegistrationCallback callback) {
-//        if (!initialized) {
-//            callback.onError("Face recognition service not initialized");
-//            return;
-//        }
-//
-//        if (registeredEmbeddings.size() >= MAX_REGISTERED_USERS) {
-//            callback.onError("Maximum number of registered users reached (" + MAX_REGISTERED_USERS + ")");
-//            return;
-//        }
-//
-//        executorService.execute(() -> {
-//            try {
-//                FaceDetectionResult detectionResult = detectAndAlignFace(faceImage);
-//
-//                if (!detectionResult.success) {
-//                    callback.onError(detectionResult.errorMessage);
-//                    return;
-//                }
-//
-//                float[] embedding = generateEmbedding(detectionResult.alignedFace);
-//
-//                if (embedding == null) {
-//                    callback.onError("Failed to generate face embedding");
-//                    return;
-//                }
-//
-//                normalizeEmbedding(embedding);
-//
-//                int existingUserId = findSimilarFace(embedding);
-//                if (existingUserId != -1) {
-//                    callback.onError("Similar face already registered with ID: " + existingUserId);
-//                    return;
-//                }
-//
-//                int newUserId = userCounter.getAndIncrement();
-//
-//                saveEmbedding(newUserId, embedding);
-//
-//                registeredEmbeddings.put(newUserId, embedding);
-//
-//                User user = new User(name, serializeEmbedding(embedding), 0, 0);
-//                user.setId(newUserId);
-//
-//                Log.i(TAG, "User registered successfully: " + name + " (ID: " + newUserId + ")");
-//                callback.onSuccess(user);
-//
-//            } catch (Exception e) {
-//                Log.e(TAG, "Registration failed: " + e.getMessage(), e);
-//                callback.onError("Registration error: " + e.getMessage());
-//            }
-//        });
-//    }
-//
-//    @Override
-//    public void recognizeUser(Bitmap faceImage, FaceRecognitionCallback callback) {
-//        if (!initialized) {
-//            callback.onError("Face recognition service not initialized");
-//            return;
-//        }
-//
-//        if (registeredEmbeddings.isEmpty()) {
-//            callback.onUnknownFace();
-//            return;
-//        }
-//
-//        executorService.execute(() -> {
-//            try {
-//                FaceDetectionResult detectionResult = detectAndAlignFace(faceImage);
-//
-//                if (!detectionResult.success) {
-//                    if (detectionResult.errorMessage.contains("No face detected")) {
-//                        callback.onNoFaceDetected();
-//                    } else {
-//                        callback.onError(detectionResult.errorMessage);
-//                    }
-//                    return;
-//                }
-//
-//                float[] embedding = generateEmbedding(detectionResult.alignedFace);
-//
-//                if (embedding == null) {
-//                    callback.onError("Failed to generate face embedding");
-//                    return;
-//                }
-//
-//                normalizeEmbedding(embedding);
-//
-//                RecognitionResult result = findBestMatch(embedding);
-//
-//                if (result != null && result.similarity >= RECOGNITION_THRESHOLD) {
-//                    User user = new User();
-//                    user.setId(result.userId);
-//                    user.setName("User " + result.userId);
-//
-//                    callback.onUserRecognized(user, result.similarity);
-//                    Log.i(TAG, "User recognized: ID=" + result.userId + ", confidence=" + result.similarity);
-//                } else {
-//                    callback.onUnknownFace();
-//                    Log.i(TAG, "Unknown face detected");
-//                }
-//
-//            } catch (Exception e) {
-//                Log.e(TAG, "Recognition failed: " + e.getMessage(), e);
-//                callback.onError("Recognition error: " + e.getMessage());
-//            }
-//        });
-//    }
-//
-//    private FaceDetectionResult detectAndAlignFace(Bitmap original) {
-//        FaceDetectionResult result = new FaceDetectionResult();
-//
-//        try {
-//            InputImage image = InputImage.fromBitmap(original, 0);
-//
-//            List<Face> faces = com.google.android.gms.tasks.Tasks.await(
-//                    faceDetector.process(image)
-//            );
-//
-//            if (faces.isEmpty()) {
-//                result.success = false;
-//                result.errorMessage = "No face detected";
-//                return result;
-//            }
-//
-//            if (faces.size() > 1) {
-//                result.success = false;
-//                result.errorMessage = "Multiple faces detected";
-//                return result;
-//            }
-//
-//            Face face = faces.get(0);
-//
-//            Bitmap alignedFace = alignFace(original, face);
-//
-//            if (alignedFace == null) {
-//                result.success = false;
-//                result.errorMessage = "Face alignment failed";
-//                return result;
-//            }
-//
-//            result.success = true;
-//            result.face = face;
-//            result.alignedFace = alignedFace;
-//
-//        } catch (Exception e) {
-//            result.success = false;
-//            result.errorMessage = "Face detection error: " + e.getMessage();
-//        }
-//
-//        return result;
-//    }
-//
-//    private Bitmap alignFace(Bitmap original, Face face) {
-//        try {
-//            RectF bounds = new RectF(face.getBoundingBox());
-//
-//            float scale = 1.3f;
-//            float centerX = bounds.centerX();
-//            float centerY = bounds.centerY();
-//            float width = bounds.width() * scale;
-//            float height = bounds.height() * scale;
-//
-//            float left = Math.max(centerX - width/2, 0);
-//            float top = Math.max(centerY - height/2, 0);
-//            float right = Math.min(centerX + width/2, original.getWidth());
-//            float bottom = Math.min(centerY + height/2, original.getHeight());
-//
-//            Bitmap cropped = Bitmap.createBitmap(
-//                    original,
-//                    (int) left,
-//                    (int) top,
-//                    (int) (right - left),
-//                    (int) (bottom - top)
-//            );
-//
-//            Bitmap scaled = Bitmap.createScaledBitmap(
-//                    cropped,
-//                    INPUT_IMAGE_SIZE,
-//                    INPUT_IMAGE_SIZE,
-//                    true
-//            );
-//
-//            Bitmap aligned = rotateFaceIfNeeded(scaled, face);
-//
-//            cropped.recycle();
-//            return aligned != null ? aligned : scaled;
-//
-//        } catch (Exception e) {
-//            Log.e(TAG, "Face alignment error: " + e.getMessage());
-//            return null;
-//        }
-//    }
-//
-//    private Bitmap rotateFaceIfNeeded(Bitmap faceBitmap, Face face) {
-//
-//        float roll = face.getHeadEulerAngleZ();
-//
-//        if (Math.abs(roll) > 10) {
-//            Matrix matrix = new Matrix();
-//            matrix.postRotate(-roll);
-//
-//            return Bitmap.createBitmap(
-//                    faceBitmap,
-//                    0, 0,
-//                    faceBitmap.getWidth(),
-//                    faceBitmap.getHeight(),
-//                    matrix,
-//                    true
-//            );
-//        }
-//
-//        return faceBitmap;
-//    }
-//
-//    private float[] generateEmbedding(Bitmap faceBitmap) {
-//        if (tfliteInterpreter == null) {
-//            return generateMockEmbedding();
-//        }
-//
-//        try {
-//            ByteBuffer inputBuffer = convertBitmapToByteBuffer(faceBitmap);
-//
-//            float[][] output = new float[1][EMBEDDING_SIZE];
-//            tfliteInterpreter.run(inputBuffer, output);
-//
-//            return output[0];
-//
-//        } catch (Exception e) {
-//            Log.e(TAG, "Embedding generation error: " + e.getMessage());
-//            return generateMockEmbedding();
-//        }
-//    }
-//
-//    private ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap) {
-//        ByteBuffer inputBuffer = ByteBuffer.allocateDirect(4 * INPUT_IMAGE_SIZE * INPUT_IMAGE_SIZE * 3);
-//        inputBuffer.order(ByteOrder.nativeOrder());
-//
-//        int[] pixels = new int[INPUT_IMAGE_SIZE * INPUT_IMAGE_SIZE];
-//        bitmap.getPixels(pixels, 0, INPUT_IMAGE_SIZE, 0, 0, INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE);
-//
-//        int pixel = 0;
-//        for (int i = 0; i < INPUT_IMAGE_SIZE; i++) {
-//            for (int j = 0; j < INPUT_IMAGE_SIZE; j++) {
-//                int color = pixels[pixel++];
-//
-//
-//                float r = ((color >> 16) & 0xFF) / 255.0f;
-//                float g = ((color >> 8) & 0xFF) / 255.0f;
-//                float b = (color & 0xFF) / 255.0f;
-//
-//               [-1, 1]
-//                inputBuffer.putFloat((r - 0.5f) * 2.0f);
-//                inputBuffer.putFloat((g - 0.5f) * 2.0f);
-//                inputBuffer.putFloat((b - 0.5f) * 2.0f);
-//            }
-//        }
-//
-//        return inputBuffer;
-//    }
-//
-//    private float[] generateMockEmbedding() {
-//        float[] embedding = new float[EMBEDDING_SIZE];
-//        for (int i = 0; i < EMBEDDING_SIZE; i++) {
-//            embedding[i] = (float) Math.random() - 0.5f;
-//        }
-//        normalizeEmbedding(embedding);
-//        return embedding;
-//    }
-//
-//    private void normalizeEmbedding(float[] embedding) {
-//        float sum = 0.0f;
-//        for (float value : embedding) {
-//            sum += value * value;
-//        }
-//
-//        float norm = (float) Math.sqrt(sum);
-//        if (norm > 0.0f) {
-//            for (int i = 0; i < embedding.length; i++) {
-//                embedding[i] /= norm;
-//            }
-//        }
-//    }
-//
-//    private int findSimilarFace(float[] embedding) {
-//        for (Map.Entry<Integer, float[]> entry : registeredEmbeddings.entrySet()) {
-//            float similarity = cosineSimilarity(embedding, entry.getValue());
-//            if (similarity > 0.9f) {
-//                return entry.getKey();
-//            }
-//        }
-//        return -1;
-//    }
-//
-//    private RecognitionResult findBestMatch(float[] embedding) {
-//        int bestUserId = -1;
-//        float bestSimilarity = -1.0f;
-//
-//        for (Map.Entry<Integer, float[]> entry : registeredEmbeddings.entrySet()) {
-//            float similarity = cosineSimilarity(embedding, entry.getValue());
-//
-//            if (similarity > bestSimilarity) {
-//                bestSimilarity = similarity;
-//                bestUserId = entry.getKey();
-//            }
-//        }
-//
-//        if (bestUserId != -1) {
-//            return new RecognitionResult(bestUserId, bestSimilarity);
-//        }
-//
-//        return null;
-//    }
-//
-//    private float cosineSimilarity(float[] a, float[] b) {
-//        float dotProduct = 0.0f;
-//        float normA = 0.0f;
-//        float normB = 0.0f;
-//
-//        for (int i = 0; i < a.length; i++) {
-//            dotProduct += a[i] * b[i];
-//            normA += a[i] * a[i];
-//            normB += b[i] * b[i];
-//        }
-//
-//        if (normA == 0.0f || normB == 0.0f) {
-//            return 0.0f;
-//        }
-//
-//        return dotProduct / (float) Math.sqrt(normA * normB);
-//    }
-//
-//    private void saveEmbedding(int userId, float[] embedding) {
-//        try {
-//            File embeddingsDir = new File(context.getFilesDir(), "face_embeddings");
-//            if (!embeddingsDir.exists()) {
-//                embeddingsDir.mkdirs();
-//            }
-//
-//            File embeddingFile = new File(embeddingsDir, "user_" + userId + ".emb");
-//
-//            try (FileOutputStream fos = new FileOutputStream(embeddingFile)) {
-//                for (float value : embedding) {
-//                    int intBits = Float.floatToIntBits(value);
-//                    fos.write((intBits >> 24) & 0xFF);
-//                    fos.write((intBits >> 16) & 0xFF);
-//                    fos.write((intBits >> 8) & 0xFF);
-//                    fos.write(intBits & 0xFF);
-//                }
-//            }
-//
-//            embeddingFiles.put(userId, embeddingFile.getAbsolutePath());
-//            Log.d(TAG, "Embedding saved for user " + userId + " at " + embeddingFile.getAbsolutePath());
-//
-//        } catch (IOException e) {
-//            Log.e(TAG, "Failed to save embedding: " + e.getMessage());
-//        }
-//    }
-//
-//    private void loadRegisteredEmbeddings() {
-//        File embeddingsDir = new File(context.getFilesDir(), "face_embeddings");
-//        if (!embeddingsDir.exists() || !embeddingsDir.isDirectory()) {
-//            return;
-//        }
-//
-//        File[] files = embeddingsDir.listFiles((dir, name) -> name.endsWith(".emb"));
-//
-//        if (files != null) {
-//            for (File file : files) {
-//                try {
-//                    String filename = file.getName();
-//                    String userIdStr = filename.substring(5, filename.length() - 4); // "user_123.emb"
-//                    int userId = Integer.parseInt(userIdStr);
-//
-//                    float[] embedding = loadEmbeddingFromFile(file);
-//
-//                    if (embedding != null) {
-//                        registeredEmbeddings.put(userId, embedding);
-//                        embeddingFiles.put(userId, file.getAbsolutePath());
-//
-//                        if (userId >= userCounter.get()) {
-//                            userCounter.set(userId + 1);
-//                        }
-//
-//                        Log.d(TAG, "Loaded embedding for user " + userId);
-//                    }
-//
-//                } catch (Exception e) {
-//                    Log.e(TAG, "Error loading embedding from " + file.getName() + ": " + e.getMessage());
-//                }
-//            }
-//        }
-//
-//        Log.i(TAG, "Loaded " + registeredEmbeddings.size() + " registered embeddings");
-//    }
-//
-//    private float[] loadEmbeddingFromFile(File file) throws IOException {
-//        byte[] bytes = new byte[(int) file.length()];
-//
-//        try (FileInputStream fis = new FileInputStream(file)) {
-//            int bytesRead = fis.read(bytes);
-//            if (bytesRead != bytes.length) {
-//                throw new IOException("Failed to read complete embedding file");
-//            }
-//        }
-//
-//        if (bytes.length % 4 != 0) {
-//            throw new IOException("Invalid embedding file size");
-//        }
-//
-//        float[] embedding = new float[bytes.length / 4];
-//
-//        for (int i = 0; i < embedding.length; i++) {
-//            int intBits = ((bytes[i*4] & 0xFF) << 24) |
-//                    ((bytes[i*4+1] & 0xFF) << 16) |
-//                    ((bytes[i*4+2] & 0xFF) << 8) |
-//                    (bytes[i*4+3] & 0xFF);
-//            embedding[i] = Float.intBitsToFloat(intBits);
-//        }
-//
-//        return embedding;
-//    }
-//
-//    private String serializeEmbedding(float[] embedding) {
-//        StringBuilder sb = new StringBuilder();
-//        for (int i = 0; i < Math.min(embedding.length, 10); i++) {
-//            sb.append(String.format("%.4f", embedding[i]));
-//            if (i < 9) sb.append(",");
-//        }
-//        return sb.toString();
-//    }
-//
-//    @Override
-//    public boolean isAvailable() {
-//        return initialized;
-//    }
-//
-//    @Override
-//    public void clearCache() {
-//        executorService.execute(() -> {
-//            registeredEmbeddings.clear();
-//            embeddingFiles.clear();
-//
-//            File embeddingsDir = new File(context.getFilesDir(), "face_embeddings");
-//            if (embeddingsDir.exists()) {
-//                File[] files = embeddingsDir.listFiles();
-//                if (files != null) {
-//                    for (File file : files) {
-//                        file.delete();
-//                    }
-//                }
-//                embeddingsDir.delete();
-//            }
-//
-//            Log.i(TAG, "Face recognition cache cleared");
-//        });
-//    }
-//
-//    private static class FaceDetectionResult {
-//        boolean success;
-//        String errorMessage;
-//        Face face;
-//        Bitmap alignedFace;
-//    }
-//
-//    private static class RecognitionResult {
-//        int userId;
-//        float similarity;
-//
-//        RecognitionResult(int userId, float similarity) {
-//            this.userId = userId;
-//            this.similarity = similarity;
-//        }
-//    }
-//
-//    public int getRegisteredUsersCount() {
-//        return registeredEmbeddings.size();
-//    }
-//
-//    public List<Integer> getRegisteredUserIds() {
-//        return new ArrayList<>(registeredEmbeddings.keySet());
-//    }
-//
-//    public void deleteUser(int userId) {
-//        executorService.execute(() -> {
-//            try {
-//                registeredEmbeddings.remove(userId);
-//
-//
-//                String filePath = embeddingFiles.remove(userId);
-//                if (filePath != null) {
-//                    File file = new File(filePath);
-//                    file.delete();
-//                }
-//
-//                Log.i(TAG, "User " + userId + " deleted from face recognition");
-//
-//            } catch (Exception e) {
-//                Log.e(TAG, "Error deleting user " + userId + ": " + e.getMessage());
-//            }
-//        });
-//    }
-//}
\ No newline at end of file
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
+import com.example.smartscales.utils.BitmapTensorConverter;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Распознавание на модели MobileFaceNet (TFLite).
+ *
+ * Модель отображается в память из assets без копирования и разделяется пулом
+ * интерпретаторов (InterpreterPool); буферы входа и выхода у каждого свои и переиспользуются.
+ * Несколько лиц (кадры регистрации, несколько людей в кадре) считаются одним вызовом
+ * с входом [N, 112, 112, 3].
+ *
+ * Если в сборке есть int8-вариант модели, используется он: вход заполняется
+ * квантованными байтами прямо из пикселей по параметрам квантования тензора,
+ * выход деквантуется перед нормализацией.
+ * Детекция, выравнивание по ML Kit, галерея и БД — из FaceRecognitionService.
+ *
+ * Файлы моделей в репозиторий не входят: MobileFaceNet, сконвертированная в TFLite
+ * (вход [1, 112, 112, 3] RGB в [-1, 1], выход — эмбеддинг), кладётся в app/src/main/assets
+ * как MODEL_FILE, int8-вариант — как MODEL_FILE_INT8 (необязательно). Без MODEL_FILE
+ * create() бросает IOException, и приложение показывает ошибку вместо распознавания.
+ * create() загружает модель, проверяет тензоры и при первом запуске замеряет делегаты
+ * (DelegateSelector) — не вызывать из главного потока.
+ */
+public class TFLiteFaceRecognition extends FaceRecognitionService {
+    private static final String TAG = "TFLiteFaceRecognition";
+
+    public static final String MODEL_FILE = "mobilefacenet.tflite";
+    public static final String MODEL_FILE_INT8 = "mobilefacenet_int8.tflite";
+    public static final String PREF_QUANTIZED_MODEL = "face_model_quantized"; // int8-модель, если есть
+    public static final String PREF_INTERPRETER_POOL_SIZE = "face_interpreter_pool_size"; // 0 — авто
+    private static final int INPUT_IMAGE_SIZE = 112;
+
+    private static final float INPUT_MEAN = 127.5f; // RGB в [-1, 1], как при обучении MobileFaceNet
+    private static final float INPUT_STD = 127.5f;
+
+    private final InterpreterPool interpreterPool;
+    private final BitmapTensorConverter tensorConverter;
+    private final boolean quantizedInput;
+    private final float outputScale;   // Деквантование выхода: (q - zeroPoint) * scale
+    private final int outputZeroPoint;
+    private final boolean signedOutput;
+
+    private TFLiteFaceRecognition(Context context, FaceDetectionInterface faceDetection,
+                                  InterpreterPool interpreterPool) {
+        super(context, faceDetection, interpreterPool.getEmbeddingSize());
+        this.interpreterPool = interpreterPool;
+
+        Tensor input = interpreterPool.getInputTensor();
+        quantizedInput = input.dataType() != DataType.FLOAT32;
+        if (quantizedInput) {
+            Tensor.QuantizationParams params = input.quantizationParams();
+            tensorConverter = new BitmapTensorConverter(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE,
+                    INPUT_MEAN, INPUT_STD, params.getScale(), params.getZeroPoint(),
+                    input.dataType() == DataType.INT8);
+        } else {
+            tensorConverter = new BitmapTensorConverter(INPUT_IMAGE_SIZE, INPUT_IMAGE_SIZE, INPUT_MEAN, INPUT_STD);
+        }
+
+        Tensor output = interpreterPool.getOutputTensor();
+        Tensor.QuantizationParams outputParams = output.quantizationParams();
+        outputScale = outputParams.getScale() > 0 ? outputParams.getScale() : 1f;
+        outputZeroPoint = outputParams.getZeroPoint();
+        signedOutput = output.dataType() == DataType.INT8;
+    }
+
+    /**
+     * Загружает модель из assets; размерность эмбеддинга берётся из выходного тензора.
+     * int8-модель, которая не загрузилась или не прошла проверку тензоров, заменяется float.
+     * @throws IOException если float-модели нет в сборке или она не подходит
+     */
+    public static TFLiteFaceRecognition create(Context context, FaceDetectionInterface faceDetection)
+            throws IOException {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        if (preferences.getBoolean(PREF_QUANTIZED_MODEL, true)) {
+            try {
+                return create(context, faceDetection, preferences, MODEL_FILE_INT8);
+            } catch (IOException | RuntimeException e) {
+                // Нет в сборке или не подходит по тензорам — float-модель всё равно есть
+                Log.d(TAG, "int8-модель недоступна, используется float: " + e.getMessage());
+            }
+        }
+        return create(context, faceDetection, preferences, MODEL_FILE);
+    }
+
+    private static TFLiteFaceRecognition create(Context context, FaceDetectionInterface faceDetection,
+                                                SharedPreferences preferences, String modelFile)
+            throws IOException {
+        MappedByteBuffer model = loadModelFile(context, modelFile);
+        int poolSize = preferences.getInt(PREF_INTERPRETER_POOL_SIZE, 0);
+        DelegateSelector.Config config = DelegateSelector.select(preferences, model);
+        InterpreterPool pool;
+        try {
+            pool = new InterpreterPool(model, poolSize, config);
+        } catch (RuntimeException e) {
+            // Делегат, выбранный замером, может не подняться после обновления драйверов
+            Log.w(TAG, "Конфигурация " + config + " не создалась, используется " +
+                    DelegateSelector.DEFAULT + ": " + e.getMessage());
+            pool = new InterpreterPool(model, poolSize, DelegateSelector.DEFAULT);
+        }
+
+        int[] inputShape = pool.getInputShape(); // [1, 112, 112, 3]
+        if (inputShape.length != 4 || inputShape[1] != INPUT_IMAGE_SIZE
+                || inputShape[2] != INPUT_IMAGE_SIZE || inputShape[3] != 3) {
+            pool.close();
+            throw new IOException("Unexpected model input shape: " + Arrays.toString(inputShape));
+        }
+        DataType inputType = pool.getInputTensor().dataType();
+        DataType outputType = pool.getOutputTensor().dataType();
+        if (!isSupported(inputType) || !isSupported(outputType)) {
+            pool.close();
+            throw new IOException("Unsupported model tensor types: " + inputType + " -> " + outputType);
+        }
+        // Прогрев — только для проверенной модели: закрытие выше не пересекается с фоновым run
+        pool.start();
+        Log.i(TAG, "Модель " + modelFile + " загружена (" + inputType + "), размер эмбеддинга " +
+                pool.getEmbeddingSize());
+        return new TFLiteFaceRecognition(context, faceDetection, pool);
+    }
+
+    private static boolean isSupported(DataType type) {
+        return type == DataType.FLOAT32 || type == DataType.UINT8 || type == DataType.INT8;
+    }
+
+    private static MappedByteBuffer loadModelFile(Context context, String modelFilename) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFilename);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
+    }
+
+    /**
+     * Берёт свободный интерпретатор из пула; параллельные вызовы не сериализуются
+     */
+    @Override
+    protected float[] generateFaceEmbedding(Bitmap faceImage) {
+        InterpreterPool.Slot slot = acquireSlot();
+        try {
+            InterpreterPool.Batch batch = slot.batch(1);
+            fillInput(batch, faceImage, 0);
+            long start = System.nanoTime();
+            slot.run(batch);
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "Инференс: " + (System.nanoTime() - start) / 1000 + " мкс");
+            }
+            return readEmbedding(batch, 0);
+        } finally {
+            interpreterPool.release(slot);
+        }
+    }
+
+    /**
+     * Один вызов интерпретатора на до InterpreterPool.BATCH_SIZE лиц вместо вызова на каждое;
+     * неполный батч дополняется, остаток в одно лицо идёт в одиночный интерпретатор
+     */
+    @Override
+    protected float[][] generateFaceEmbeddings(List<Bitmap> faceImages) {
+        int count = faceImages.size();
+        float[][] embeddings = new float[count][];
+        if (count == 0) {
+            return embeddings;
+        }
+
+        InterpreterPool.Slot slot = acquireSlot();
+        try {
+            for (int from = 0; from < count; from += InterpreterPool.BATCH_SIZE) {
+                int n = Math.min(InterpreterPool.BATCH_SIZE, count - from);
+                InterpreterPool.Batch batch = slot.batch(n);
+                for (int i = 0; i < n; i++) {
+                    fillInput(batch, faceImages.get(from + i), i);
+                }
+                long start = System.nanoTime();
+                slot.run(batch);
+                if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                    Log.v(TAG, "Инференс батча " + n + ": " + (System.nanoTime() - start) / 1000 + " мкс");
+                }
+
+                for (int i = 0; i < n; i++) {
+                    embeddings[from + i] = readEmbedding(batch, i);
+                }
+            }
+            return embeddings;
+        } finally {
+            interpreterPool.release(slot);
+        }
+    }
+
+    private void fillInput(InterpreterPool.Batch batch, Bitmap faceImage, int index) {
+        if (quantizedInput) {
+            tensorConverter.toQuantized(faceImage, batch.input, index);
+        } else {
+            tensorConverter.toFloat(faceImage, batch.inputFloats, index);
+        }
+    }
+
+    /**
+     * Нормализованный эмбеддинг index-го элемента батча; квантованный выход деквантуется
+     */
+    private float[] readEmbedding(InterpreterPool.Batch batch, int index) {
+        float[] embedding;
+        if (batch.outputBytes == null) {
+            embedding = batch.output[index].clone();
+        } else {
+            embedding = new float[embeddingSize];
+            int offset = index * embeddingSize;
+            for (int d = 0; d < embeddingSize; d++) {
+                byte b = batch.outputBytes.get(offset + d);
+                int q = signedOutput ? b : b & 0xFF;
+                embedding[d] = (q - outputZeroPoint) * outputScale;
+            }
+        }
+        normalizeVector(embedding);
+        return embedding;
+    }
+
+    private InterpreterPool.Slot acquireSlot() {
+        try {
+            return interpreterPool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for interpreter", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.smartscales.domain.services;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+/**
+ * Ограниченная min-куча на примитивных массивах для отбора K лучших кандидатов.
+ * В корне всегда худший из отобранных, поэтому проверка нового кандидата — O(1).
+ */
+final class TopKCollector {
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    TopKCollector(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.ids = new int[k];
+        this.scores = new float[k];
+    }
+
+    void offer(int id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Порог отсечения: кандидат с меньшим сходством в кучу уже не попадёт
+     */
+    float threshold() {
+        return size < ids.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Сливает кандидатов другого коллектора (порядок в куче не важен)
+     */
+    void addAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            if (other.scores[i] > threshold()) {
+                offer(other.ids[i], other.scores[i]);
+            }
+        }
+    }
+
+    /**
+     * Извлекает кандидатов по убыванию сходства; после вызова коллектор пуст.
+     */
+    SearchResult toResult(float scale) {
+        int count = size;
+        int[] resultIds = new int[count];
+        float[] resultScores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            resultIds[i] = ids[0];
+            resultScores[i] = scores[0] * scale;
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return new SearchResult(resultIds, resultScores);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[index] <= scores[smallest]) {
+                break;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
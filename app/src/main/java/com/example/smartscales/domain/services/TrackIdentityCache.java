@@ -0,0 +1,118 @@
+package com.example.smartscales.domain.services;
+
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+/**
+ * Кэш trackingId → распознанный пользователь, пока лицо остаётся в кадре.
+ *
+ * Пока запись свежа, кадры трека не распознаются вовсе. Раз в REVERIFY_INTERVAL_MS
+ * или при скачке рамки (трекер мог перепутать лица) нужен один проверочный кадр.
+ * Через IDENTITY_TTL_MS после решения запись истекает и трек голосуется заново.
+ */
+public class TrackIdentityCache {
+    public enum Status {
+        HIT,     // Пользователь известен, кадр не нужен
+        VERIFY,  // Нужен один проверочный кадр
+        EXPIRED, // Запись истекла — нужно новое голосование
+        MISS     // Записи нет
+    }
+
+    private static final long REVERIFY_INTERVAL_MS = 10_000;
+    private static final long IDENTITY_TTL_MS = 60_000;
+    private static final long TRACK_TIMEOUT_MS = 3000;
+    private static final float MAX_CENTER_SHIFT = 0.5f; // Доля ширины рамки за кадр
+    private static final float MAX_SIZE_RATIO = 1.5f;
+
+    private final SparseArray<Entry> entries = new SparseArray<>();
+
+    /**
+     * Состояние трека для текущего кадра; обновляет последнюю рамку
+     */
+    public synchronized Status check(int trackingId, Rect bounds, long now) {
+        evictStale(now);
+        Entry entry = entries.get(trackingId);
+        if (entry == null) {
+            return Status.MISS;
+        }
+        if (now - entry.decidedAt > IDENTITY_TTL_MS) {
+            entries.remove(trackingId);
+            return Status.EXPIRED;
+        }
+
+        boolean jumped = bounds != null && entry.lastBounds != null && isJump(entry.lastBounds, bounds);
+        entry.lastSeen = now;
+        if (bounds != null) {
+            entry.lastBounds = new Rect(bounds);
+        }
+        if (jumped) {
+            entry.verificationDue = true;
+        }
+        if (entry.verificationDue || now - entry.verifiedAt > REVERIFY_INTERVAL_MS) {
+            return Status.VERIFY;
+        }
+        return Status.HIT;
+    }
+
+    public synchronized void put(int trackingId, int userId, Rect bounds, long now) {
+        Entry entry = new Entry();
+        entry.userId = userId;
+        entry.decidedAt = now;
+        entry.verifiedAt = now;
+        entry.lastSeen = now;
+        entry.lastBounds = bounds != null ? new Rect(bounds) : null;
+        entries.put(trackingId, entry);
+    }
+
+    /**
+     * @return закэшированный пользователь (FaceTrackVoter.UNKNOWN_USER для чужого лица) или null
+     */
+    public synchronized Integer getUserId(int trackingId) {
+        Entry entry = entries.get(trackingId);
+        return entry != null ? entry.userId : null;
+    }
+
+    public synchronized void confirm(int trackingId, long now) {
+        Entry entry = entries.get(trackingId);
+        if (entry != null) {
+            entry.verifiedAt = now;
+            entry.verificationDue = false;
+        }
+    }
+
+    public synchronized void remove(int trackingId) {
+        entries.remove(trackingId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static boolean isJump(Rect previous, Rect current) {
+        int width = Math.max(1, previous.width());
+        float shift = (float) Math.hypot(current.centerX() - previous.centerX(),
+                current.centerY() - previous.centerY());
+        if (shift > MAX_CENTER_SHIFT * width) {
+            return true;
+        }
+        float ratio = (float) Math.max(1, current.width()) / width;
+        return ratio > MAX_SIZE_RATIO || ratio < 1 / MAX_SIZE_RATIO;
+    }
+
+    private void evictStale(long now) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (now - entries.valueAt(i).lastSeen > TRACK_TIMEOUT_MS) {
+                entries.removeAt(i);
+            }
+        }
+    }
+
+    private static class Entry {
+        int userId;
+        long decidedAt;
+        long verifiedAt;
+        long lastSeen;
+        Rect lastBounds;
+        boolean verificationDue;
+    }
+}
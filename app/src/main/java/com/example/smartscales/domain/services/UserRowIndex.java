@@ -0,0 +1,48 @@
+package com.example.smartscales.domain.services;
+
+import android.util.SparseIntArray;
+
+/**
+ * Отображение id пользователя в номер строки галереи вместо линейного поиска по userIds.
+ * Общее для галерей с упакованными строками (FaceEmbeddingStore, Int8EmbeddingStore,
+ * PqEmbeddingStore): удаление переносит последнюю строку на место удалённой.
+ *
+ * Синхронизацию обеспечивает владелец — под тем же lock, что и его массивы.
+ */
+final class UserRowIndex {
+    private final SparseIntArray rows = new SparseIntArray();
+
+    /**
+     * @return номер строки пользователя или -1
+     */
+    int get(int userId) {
+        return rows.get(userId, -1);
+    }
+
+    void put(int userId, int row) {
+        rows.put(userId, row);
+    }
+
+    /**
+     * Убирает пользователя и переносит id последней строки (size - 1) на его место в userIds;
+     * данные строки владелец переносит сам.
+     * @return освободившаяся строка или -1, если пользователя нет
+     */
+    int remove(int userId, int[] userIds, int size) {
+        int row = get(userId);
+        if (row < 0) {
+            return -1;
+        }
+        rows.delete(userId);
+        int last = size - 1;
+        if (row != last) {
+            userIds[row] = userIds[last];
+            rows.put(userIds[row], row);
+        }
+        return row;
+    }
+
+    void clear() {
+        rows.clear();
+    }
+}
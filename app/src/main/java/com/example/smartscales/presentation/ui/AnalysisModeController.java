@@ -0,0 +1,218 @@
+package com.example.smartscales.presentation.ui;
+
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+import android.util.Size;
+
+import com.example.smartscales.utils.PipelineStage;
+
+import java.util.List;
+
+/**
+ * Адаптивное разрешение и частота кадров анализа камеры.
+ *
+ * Три режима: IDLE — лица нет или весы пусты, низкое разрешение и редкие кадры;
+ * ACTIVE — лицо в кадре и на весах стоят, разрешение выше для распознавания;
+ * IDENTIFIED — пользователь узнан, снова низкое разрешение, кадры только подтверждают трек.
+ * Разрешение в ACTIVE снижается, если детектор на нём не укладывается в бюджет или
+ * устройство греется; интервал между кадрами не меньше удвоенного времени детекции
+ * и не меньше времени самой медленной стадии конвейера (onPipelineMetrics) — иначе
+ * кадры, которые конвейер не успеет обработать, только вытесняли бы друг друга из очередей.
+ * Методы вызываются из разных потоков (камера, конвейер, главный) — всё под this.
+ */
+public class AnalysisModeController {
+    private static final String TAG = "AnalysisModeController";
+
+    // Соотношение 4:3, как у превью по умолчанию, — смена разрешения не меняет кадрирование
+    static final Size LOW_RESOLUTION = new Size(320, 240);
+    static final Size MEDIUM_RESOLUTION = new Size(640, 480);
+    static final Size HIGH_RESOLUTION = new Size(1280, 960);
+
+    private static final long FACE_LOST_GRACE_MS = 2000; // Лицо пропало на пару кадров — ещё не IDLE
+    private static final long RESOLUTION_HOLD_MS = 3000; // Камера перестраивается не чаще
+    private static final float DETECT_BUDGET_MS = 120f;  // Дольше — высокое разрешение устройству не по силам
+    private static final long SLOW_RETRY_MS = 60_000;    // Через сколько снова пробовать высокое
+    private static final float DETECT_DUTY_CYCLE = 0.5f; // Доля времени, которую может занимать детекция
+    private static final int WARMUP_SAMPLES = 3;         // Первые кадры после смены разрешения не считаются
+    private static final float LATENCY_SMOOTHING = 0.2f;
+    private static final long THERMAL_POLL_MS = 10_000;
+    private static final int THERMAL_FORECAST_SECONDS = 10;
+    private static final float THERMAL_HEADROOM_LIMIT = 0.85f; // 1.0 — начало троттлинга
+    private static final int THERMAL_INTERVAL_FACTOR = 2;
+
+    public enum Mode {
+        IDLE(500),
+        ACTIVE(200),
+        IDENTIFIED(1000);
+
+        final long frameIntervalMs;
+
+        Mode(long frameIntervalMs) {
+            this.frameIntervalMs = frameIntervalMs;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Нужно другое разрешение анализа; вызывается из потока камеры
+         */
+        void onResolutionChanged(Size resolution);
+    }
+
+    private final PowerManager powerManager;
+    private Listener listener;
+
+    private Mode mode = Mode.IDLE;
+    private Size resolution = LOW_RESOLUTION;
+    private long resolutionChangedAt;
+    private long lastAnalyzedAt;
+    private long lastFaceAt;
+    private boolean scaleLoaded;
+    private boolean identified;
+
+    private float detectLatencyMs;
+    private int latencySamples;
+    private long highResolutionBlockedUntil;
+    private float bottleneckMs; // Среднее время самой медленной стадии конвейера
+
+    private boolean thermalConstrained;
+    private long lastThermalPoll;
+
+    public AnalysisModeController(PowerManager powerManager) {
+        this.powerManager = powerManager;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized Size getResolution() {
+        return resolution;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public synchronized void setScaleLoaded(boolean loaded) {
+        scaleLoaded = loaded;
+    }
+
+    public synchronized void setIdentified(boolean identified) {
+        this.identified = identified;
+    }
+
+    /**
+     * Итог детекции кадра: есть ли лица и сколько работал детектор
+     */
+    public synchronized void onDetection(boolean facesPresent, float detectMs) {
+        long now = System.currentTimeMillis();
+        if (facesPresent) {
+            lastFaceAt = now;
+        }
+        if (++latencySamples <= WARMUP_SAMPLES) {
+            return;
+        }
+        detectLatencyMs = latencySamples == WARMUP_SAMPLES + 1
+                ? detectMs
+                : detectLatencyMs + (detectMs - detectLatencyMs) * LATENCY_SMOOTHING;
+
+        if (resolution.equals(HIGH_RESOLUTION) && detectLatencyMs > DETECT_BUDGET_MS) {
+            highResolutionBlockedUntil = now + SLOW_RETRY_MS;
+            Log.d(TAG, "Детекция " + Math.round(detectLatencyMs) + " мс на " + resolution +
+                    " — снижаем разрешение");
+        }
+    }
+
+    /**
+     * Метрики стадий конвейера анализа (FaceAnalysisPipeline.Listener.onMetrics)
+     */
+    public synchronized void onPipelineMetrics(List<PipelineStage.Metrics> metrics) {
+        float slowest = 0;
+        for (PipelineStage.Metrics stage : metrics) {
+            slowest = Math.max(slowest, stage.averageProcessMs);
+        }
+        bottleneckMs = slowest;
+    }
+
+    /**
+     * Шлюз кадров анализатора: пересчитывает режим и решает, анализировать ли этот кадр
+     */
+    public boolean shouldAnalyze(long now) {
+        Size changed = null;
+        Listener target;
+        boolean analyze;
+        synchronized (this) {
+            pollThermal(now);
+            Mode next = identified ? Mode.IDENTIFIED
+                    : scaleLoaded && now - lastFaceAt < FACE_LOST_GRACE_MS ? Mode.ACTIVE
+                    : Mode.IDLE;
+            if (next != mode) {
+                Log.d(TAG, "Режим анализа: " + mode + " → " + next);
+                mode = next;
+            }
+
+            Size wanted = resolutionFor(mode, now);
+            if (!wanted.equals(resolution) && now - resolutionChangedAt >= RESOLUTION_HOLD_MS) {
+                Log.d(TAG, "Разрешение анализа: " + resolution + " → " + wanted);
+                resolution = wanted;
+                resolutionChangedAt = now;
+                latencySamples = 0; // Замеры старого разрешения к новому не относятся
+                changed = wanted;
+            }
+
+            analyze = now - lastAnalyzedAt >= frameInterval();
+            if (analyze) {
+                lastAnalyzedAt = now;
+            }
+            target = listener;
+        }
+        if (changed != null && target != null) {
+            target.onResolutionChanged(changed);
+        }
+        return analyze;
+    }
+
+    private Size resolutionFor(Mode mode, long now) {
+        if (mode != Mode.ACTIVE) {
+            return LOW_RESOLUTION;
+        }
+        if (thermalConstrained || now < highResolutionBlockedUntil) {
+            return MEDIUM_RESOLUTION;
+        }
+        return HIGH_RESOLUTION;
+    }
+
+    private long frameInterval() {
+        long interval = mode.frameIntervalMs;
+        if (thermalConstrained) {
+            interval *= THERMAL_INTERVAL_FACTOR;
+        }
+        interval = Math.max(interval, (long) bottleneckMs);
+        return Math.max(interval, (long) (detectLatencyMs / DETECT_DUTY_CYCLE));
+    }
+
+    /**
+     * Тепловой статус (API 29+) и прогноз запаса (API 30+); системные вызовы не чаще THERMAL_POLL_MS
+     */
+    private void pollThermal(long now) {
+        if (powerManager == null || now - lastThermalPoll < THERMAL_POLL_MS) {
+            return;
+        }
+        lastThermalPoll = now;
+        boolean constrained = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            constrained = powerManager.getCurrentThermalStatus() >= PowerManager.THERMAL_STATUS_MODERATE;
+        }
+        if (!constrained && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            float headroom = powerManager.getThermalHeadroom(THERMAL_FORECAST_SECONDS);
+            constrained = !Float.isNaN(headroom) && headroom >= THERMAL_HEADROOM_LIMIT;
+        }
+        if (constrained != thermalConstrained) {
+            Log.d(TAG, constrained ? "Устройство греется — анализ реже и в меньшем разрешении"
+                    : "Тепловой запас восстановлен");
+            thermalConstrained = constrained;
+        }
+    }
+}
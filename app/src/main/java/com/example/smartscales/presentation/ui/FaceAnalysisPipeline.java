@@ -0,0 +1,366 @@
+package com.example.smartscales.presentation.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+import com.example.smartscales.utils.BitmapPool;
+import com.example.smartscales.utils.FaceAligner;
+import com.example.smartscales.utils.PipelineStage;
+import com.example.smartscales.utils.SharedFrame;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Конвейер анализа кадров камеры: детекция → вырезание → выравнивание → эмбеддинг → поиск.
+ *
+ * Детекция каскадная: быстрый детектор без точек ищет и отслеживает лица на каждом кадре,
+ * точный детектор с точками запускается только на вырезанной области лица, которое
+ * пойдёт в эмбеддинг. У каждой стадии своя ограниченная очередь и поток (PipelineStage);
+ * не успевающая стадия теряет самые старые элементы, а не копит задержку. Кадр камеры
+ * удерживается только до вырезания лиц. Области лиц и выровненные лица — Bitmap фиксированного
+ * размера из пулов (BitmapPool): область масштабируется из плоскостей YUV прямо в Bitmap пула,
+ * выравнивание рисует в Bitmap пула, вход модели заполняется из него через буферы конвертера;
+ * на лицо новых Bitmap не создаётся. Решения о том, какие лица распознавать, и результат
+ * поиска отдаются Listener; метрики стадий — тоже, раз в METRICS_PUBLISH_INTERVAL_MS,
+ * и в лог раз в METRICS_LOG_INTERVAL_MS.
+ */
+public class FaceAnalysisPipeline {
+    private static final String TAG = "FaceAnalysisPipeline";
+    private static final long METRICS_PUBLISH_INTERVAL_MS = 1000;
+    private static final long METRICS_LOG_INTERVAL_MS = 10_000;
+    private static final float UNTRACKED_CROP_SCALE = 1.3f; // Запас вокруг рамки для повторной детекции
+    private static final float LANDMARK_ROI_SCALE = 1.5f;   // Область для точного детектора: лоб и подбородок целиком
+    private static final int LANDMARK_ROI_SIZE = 192;       // Сторона области в пикселях: лицо ~128, не меньше шаблона 112
+    private static final int BITMAP_POOL_CAPACITY = 16;     // С запасом на лица в очередях стадий
+    private static final int CANDIDATES = 3; // Кандидатов на кадр для голосования по треку
+    // Рамки для кэша треков — в долях кадра, а не в пикселях: разрешение анализа
+    // меняется на ходу, и пиксельная рамка выглядела бы скачком трека
+    public static final int NORMALIZED_FRAME_SIZE = 10_000;
+
+    public interface Listener {
+        /**
+         * Результат детекции кадра (в том числе пустой) — для оверлея; detectMs — время детектора
+         */
+        void onFacesDetected(List<Face> faces, float detectMs);
+
+        /**
+         * Детектор не отработал на кадре: это не «лиц нет», текущего пользователя не сбрасывать
+         */
+        void onDetectionFailed(String error);
+
+        /**
+         * Нужно ли распознавать лицо отслеживаемого трека в этом кадре.
+         * bounds — рамка в нормированных координатах кадра (см. NORMALIZED_FRAME_SIZE)
+         */
+        boolean needsRecognition(int trackingId, Rect bounds);
+
+        /**
+         * Брать ли лицо без trackingId (оно распознаётся сервисом целиком, с детекцией)
+         */
+        boolean acceptUntrackedFace();
+
+        void onUntrackedFace(Bitmap faceBitmap);
+
+        /**
+         * Кандидаты для лиц треков одного кадра; списки параллельны, рамки нормированы.
+         * primaryFirst — первое лицо списков основное (самое крупное в кадре); false, если
+         * основному распознавание в этом кадре не понадобилось
+         */
+        void onTrackCandidates(List<Integer> trackingIds, List<Rect> bounds, List<SearchResult> candidates,
+                               boolean primaryFirst);
+
+        /**
+         * Метрики стадий по порядку конвейера; вызывается из потока камеры
+         */
+        void onMetrics(List<PipelineStage.Metrics> metrics);
+    }
+
+    private final FaceDetectionInterface detection;
+    private final FaceAligner aligner;
+    private final FaceRecognitionInterface recognition;
+    private final Listener listener;
+    private final BitmapPool regionPool = new BitmapPool(LANDMARK_ROI_SIZE, LANDMARK_ROI_SIZE, BITMAP_POOL_CAPACITY);
+    private final BitmapPool alignedPool;
+
+    private final PipelineStage<SharedFrame> detectStage;
+    private final PipelineStage<DetectedFrame> cropStage;
+    private final PipelineStage<FaceBatch> alignStage;
+    private final PipelineStage<FaceBatch> embedStage;
+    private final PipelineStage<FaceBatch> matchStage;
+    private final List<PipelineStage<?>> stages;
+    private volatile long lastMetricsPublish;
+    private volatile long lastMetricsLog;
+
+    /**
+     * @param detection общий сервис детекции: PRESENCE для кадров, LANDMARKS для областей лиц
+     */
+    public FaceAnalysisPipeline(FaceDetectionInterface detection, FaceAligner aligner,
+                                FaceRecognitionInterface recognition, Listener listener) {
+        this.detection = detection;
+        this.aligner = aligner;
+        this.recognition = recognition;
+        this.listener = listener;
+        this.alignedPool = new BitmapPool(aligner.getSize(), aligner.getSize(), BITMAP_POOL_CAPACITY);
+
+        // Кадры держат буфер камеры — очередь в один кадр, выброшенный сразу освобождается
+        detectStage = new PipelineStage<>("detect", 1, this::detect, SharedFrame::release);
+        cropStage = new PipelineStage<>("crop", 1, this::crop, detected -> detected.frame.release());
+        alignStage = new PipelineStage<>("align", 2, this::align, regions -> regions.releaseBitmaps(regionPool));
+        embedStage = new PipelineStage<>("embed", 2, this::embed, batch -> batch.releaseBitmaps(alignedPool));
+        matchStage = new PipelineStage<>("match", 2, this::match, null);
+        stages = Arrays.asList(detectStage, cropStage, alignStage, embedStage, matchStage);
+    }
+
+    /**
+     * Вход конвейера (стадия захвата): кадр анализатора CameraX; закрывать его больше не нужно
+     */
+    public void submit(ImageProxy imageProxy) {
+        detectStage.submit(new SharedFrame(imageProxy));
+        publishMetricsIfDue();
+    }
+
+    public List<PipelineStage.Metrics> getMetrics() {
+        List<PipelineStage.Metrics> metrics = new ArrayList<>(stages.size());
+        for (PipelineStage<?> stage : stages) {
+            metrics.add(stage.getMetrics());
+        }
+        return metrics;
+    }
+
+    public void shutdown() {
+        for (PipelineStage<?> stage : stages) {
+            stage.shutdown();
+        }
+    }
+
+    private void detect(SharedFrame frame) throws Exception {
+        List<Face> faces;
+        long start = System.nanoTime();
+        try {
+            faces = detection.detectFacesBlocking(frame.toInputImage(), FaceDetectionInterface.Tier.PRESENCE);
+        } catch (Exception e) {
+            frame.release();
+            listener.onDetectionFailed(e.getMessage());
+            throw e; // Ошибку с трассой пишет стадия
+        }
+        listener.onFacesDetected(faces, (System.nanoTime() - start) / 1e6f);
+        if (faces.isEmpty()) {
+            frame.release();
+            return;
+        }
+        cropStage.submit(new DetectedFrame(frame, faces));
+    }
+
+    /**
+     * Области лиц, которым нужно распознавание, — прямо из буфера кадра; после этого кадр отпускается.
+     * Основное лицо (первое в батче) — самое крупное из отслеживаемых; путь без трека —
+     * только если отслеживаемых в кадре нет
+     */
+    private void crop(DetectedFrame detected) {
+        try {
+            Face primary = largestFace(detected.faces, true);
+            if (primary == null) {
+                Face untracked = largestFace(detected.faces, false);
+                if (listener.acceptUntrackedFace()) {
+                    Bitmap faceBitmap = detected.frame.cropRegion(paddedRegion(untracked, UNTRACKED_CROP_SCALE));
+                    if (faceBitmap != null) {
+                        listener.onUntrackedFace(faceBitmap);
+                    }
+                }
+                return;
+            }
+
+            FaceBatch batch = new FaceBatch(detected.faces.size());
+            batch.primaryFirst = addIfNeeded(batch, primary, detected.frame);
+            for (Face face : detected.faces) {
+                if (face != primary && face.getTrackingId() != null) {
+                    addIfNeeded(batch, face, detected.frame);
+                }
+            }
+            if (!batch.faceBitmaps.isEmpty()) {
+                alignStage.submit(batch);
+            }
+        } finally {
+            detected.frame.release();
+        }
+    }
+
+    /**
+     * @return добавлено ли лицо в батч
+     */
+    private boolean addIfNeeded(FaceBatch batch, Face face, SharedFrame frame) {
+        Rect bounds = normalizedBounds(face, frame);
+        if (!listener.needsRecognition(face.getTrackingId(), bounds)) {
+            return false;
+        }
+        Bitmap region = regionPool.acquire();
+        if (frame.cropRegion(squareRegion(face, LANDMARK_ROI_SCALE), region)) {
+            batch.add(face.getTrackingId(), bounds, region);
+            return true;
+        }
+        regionPool.release(region);
+        return false;
+    }
+
+    /**
+     * Точный детектор на области каждого лица и выравнивание по его точкам
+     */
+    private void align(FaceBatch regions) throws Exception {
+        FaceBatch batch = new FaceBatch(regions.faceBitmaps.size());
+        try {
+            for (int i = 0; i < regions.faceBitmaps.size(); i++) {
+                Bitmap region = regions.faceBitmaps.get(i);
+                List<Face> faces = detection.detectFacesBlocking(InputImage.fromBitmap(region, 0),
+                        FaceDetectionInterface.Tier.LANDMARKS);
+                Face face = largestFace(faces, false);
+                if (face == null) {
+                    continue; // Точный детектор лицо не подтвердил — трек проголосует следующим кадром
+                }
+                Bitmap faceBitmap = alignedPool.acquire();
+                if (aligner.align(region, face, faceBitmap)) {
+                    batch.add(regions.trackingIds.get(i), regions.bounds.get(i), faceBitmap);
+                    batch.primaryFirst |= i == 0 && regions.primaryFirst;
+                } else {
+                    alignedPool.release(faceBitmap);
+                }
+            }
+        } catch (Exception e) {
+            batch.releaseBitmaps(alignedPool);
+            throw e;
+        } finally {
+            regions.releaseBitmaps(regionPool);
+        }
+        if (!batch.faceBitmaps.isEmpty()) {
+            embedStage.submit(batch);
+        }
+    }
+
+    private void embed(FaceBatch batch) {
+        try {
+            batch.embeddings = recognition.embedFaces(batch.faceBitmaps);
+        } finally {
+            batch.releaseBitmaps(alignedPool);
+        }
+        matchStage.submit(batch);
+    }
+
+    private void match(FaceBatch batch) {
+        List<SearchResult> candidates = new ArrayList<>(batch.embeddings.length);
+        for (float[] embedding : batch.embeddings) {
+            candidates.add(recognition.searchNearest(embedding, CANDIDATES));
+        }
+        listener.onTrackCandidates(batch.trackingIds, batch.bounds, candidates, batch.primaryFirst);
+    }
+
+    /**
+     * @param trackedOnly только лица с trackingId
+     */
+    private static Face largestFace(List<Face> faces, boolean trackedOnly) {
+        Face largest = null;
+        if (faces != null) {
+            for (Face face : faces) {
+                if (trackedOnly && face.getTrackingId() == null) {
+                    continue;
+                }
+                Rect bounds = face.getBoundingBox();
+                if (largest == null || bounds.width() * bounds.height()
+                        > largest.getBoundingBox().width() * largest.getBoundingBox().height()) {
+                    largest = face;
+                }
+            }
+        }
+        return largest;
+    }
+
+    private static Rect normalizedBounds(Face face, SharedFrame frame) {
+        Rect bounds = face.getBoundingBox();
+        float scaleX = (float) NORMALIZED_FRAME_SIZE / frame.getWidth();
+        float scaleY = (float) NORMALIZED_FRAME_SIZE / frame.getHeight();
+        return new Rect(Math.round(bounds.left * scaleX), Math.round(bounds.top * scaleY),
+                Math.round(bounds.right * scaleX), Math.round(bounds.bottom * scaleY));
+    }
+
+    /**
+     * Квадрат вокруг центра рамки: область масштабируется в квадратный Bitmap без искажения
+     */
+    private static Rect squareRegion(Face face, float scale) {
+        Rect bounds = face.getBoundingBox();
+        int half = (int) (Math.max(bounds.width(), bounds.height()) * scale) / 2;
+        return new Rect(bounds.centerX() - half, bounds.centerY() - half,
+                bounds.centerX() + half, bounds.centerY() + half);
+    }
+
+    private static Rect paddedRegion(Face face, float scale) {
+        Rect bounds = face.getBoundingBox();
+        int width = (int) (bounds.width() * scale);
+        int height = (int) (bounds.height() * scale);
+        return new Rect(bounds.centerX() - width / 2, bounds.centerY() - height / 2,
+                bounds.centerX() + width / 2, bounds.centerY() + height / 2);
+    }
+
+    private void publishMetricsIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastMetricsPublish < METRICS_PUBLISH_INTERVAL_MS) {
+            return;
+        }
+        lastMetricsPublish = now;
+        List<PipelineStage.Metrics> metrics = getMetrics();
+        listener.onMetrics(metrics);
+        if (now - lastMetricsLog >= METRICS_LOG_INTERVAL_MS) {
+            lastMetricsLog = now;
+            for (PipelineStage.Metrics stage : metrics) {
+                Log.d(TAG, stage.toString());
+            }
+        }
+    }
+
+    private static final class DetectedFrame {
+        final SharedFrame frame;
+        final List<Face> faces;
+
+        DetectedFrame(SharedFrame frame, List<Face> faces) {
+            this.frame = frame;
+            this.faces = faces;
+        }
+    }
+
+    private static final class FaceBatch {
+        final List<Integer> trackingIds;
+        final List<Rect> bounds;
+        final List<Bitmap> faceBitmaps;
+        boolean primaryFirst;
+        float[][] embeddings;
+
+        FaceBatch(int capacity) {
+            trackingIds = new ArrayList<>(capacity);
+            bounds = new ArrayList<>(capacity);
+            faceBitmaps = new ArrayList<>(capacity);
+        }
+
+        void add(int trackingId, Rect faceBounds, Bitmap faceBitmap) {
+            trackingIds.add(trackingId);
+            bounds.add(faceBounds);
+            faceBitmaps.add(faceBitmap);
+        }
+
+        /**
+         * Возвращает Bitmap в пул; после этого они батчу не принадлежат
+         */
+        void releaseBitmaps(BitmapPool pool) {
+            for (Bitmap bitmap : faceBitmaps) {
+                pool.release(bitmap);
+            }
+            faceBitmaps.clear();
+        }
+    }
+}
@@ -4,32 +4,38 @@ import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.PowerManager;
 import android.util.Log;
+import android.util.Size;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.example.smartscales.App;
 import com.example.smartscales.R;
 import com.example.smartscales.data.models.User;
 import com.example.smartscales.data.models.WeightMeasurement;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
 import com.example.smartscales.presentation.viewmodels.MainViewModel;
-import com.example.smartscales.utils.ImageUtils;
+import com.example.smartscales.utils.FaceAligner;
+import com.example.smartscales.utils.PipelineStage;
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
@@ -40,11 +46,7 @@ import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -59,11 +61,15 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private static final int CAMERA_PERMISSION_REQUEST = 100;
     private static final long FACE_RECOGNITION_INTERVAL = 2000; // 2 секунды между распознаваниями
+    private static final long TRACK_FRAME_INTERVAL = 300; // Между кадрами голосования по треку
 
     private MainViewModel viewModel;
     private ExecutorService cameraExecutor;
     private ProcessCameraProvider cameraProvider;
-    private FaceDetector faceDetector;
+    private CameraSelector cameraSelector;
+    private ImageAnalysis imageAnalysis;
+    private AnalysisModeController analysisMode;
+    private volatile FaceAnalysisPipeline analysisPipeline; // Создаётся, когда готов движок распознавания
     private FaceDetectionOverlayView faceOverlay;
 
     // UI Components
@@ -78,14 +84,16 @@ public class MainActivity extends AppCompatActivity {
     private BottomNavigationView bottomNavigation;
 
     // Face recognition timing
-    private long lastRecognitionTime = 0;
-    private boolean isRecognizing = false;
+    private volatile long lastRecognitionTime = 0; // Пишется из потоков конвейера
+    private volatile boolean isRecognizing = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        analysisMode = new AnalysisModeController((PowerManager) getSystemService(POWER_SERVICE));
+
         initViews();
         initViewModel();
         setupClickListeners();
@@ -148,6 +156,7 @@ public class MainActivity extends AppCompatActivity {
         });
 
         viewModel.getCurrentUser().observe(this, user -> {
+            analysisMode.setIdentified(user != null);
             if (user != null) {
                 tvUserName.setText(user.getName());
                 ivUserAvatar.setImageResource(R.drawable.ic_user_placeholder);
@@ -159,7 +168,9 @@ public class MainActivity extends AppCompatActivity {
         });
 
         viewModel.getCurrentWeight().observe(this, weight -> {
-            if (weight != null && weight > 10.0f) { // Игнорируем вес меньше 10 кг
+            boolean loaded = weight != null && weight > 10.0f; // Игнорируем вес меньше 10 кг
+            analysisMode.setScaleLoaded(loaded);
+            if (loaded) {
                 tvCurrentWeight.setText(String.format(Locale.getDefault(), "%.1f кг", weight));
                 tvCurrentWeight.setTextColor(ContextCompat.getColor(this, R.color.primary));
             } else {
@@ -388,20 +399,31 @@ public class MainActivity extends AppCompatActivity {
 
     private void initCamera() {
         cameraExecutor = Executors.newSingleThreadExecutor();
-        initFaceDetector();
+        App app = (App) getApplication();
+        analysisMode.setListener(resolution -> runOnUiThread(() -> rebindAnalysis(resolution)));
         startCamera();
-    }
-
-    private void initFaceDetector() {
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
-                .setMinFaceSize(0.15f)
-                .enableTracking()
-                .build();
+        // Превью работает сразу, анализ кадров — когда модель загружена
+        app.whenFaceRecognitionReady(new App.FaceRecognitionReadyCallback() {
+            @Override
+            public void onReady(FaceRecognitionInterface faceRecognition) {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                analysisPipeline = new FaceAnalysisPipeline(app.getFaceDetection(),
+                        new FaceAligner(FaceAligner.TEMPLATE_SIZE),
+                        faceRecognition,
+                        createPipelineListener());
+            }
 
-        faceDetector = FaceDetection.getClient(options);
+            @Override
+            public void onError(String error) {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                tvStatus.setText("❌ " + error);
+                Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void startCamera() {
@@ -418,14 +440,10 @@ public class MainActivity extends AppCompatActivity {
                 preview.setSurfaceProvider(cameraPreview.getSurfaceProvider());
 
                 // Image Analysis for face detection
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .build();
-
-                imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeImage);
+                imageAnalysis = buildImageAnalysis(analysisMode.getResolution());
 
                 // Camera selector - front camera
-                CameraSelector cameraSelector = new CameraSelector.Builder()
+                cameraSelector = new CameraSelector.Builder()
                         .requireLensFacing(CameraSelector.LENS_FACING_FRONT)
                         .build();
 
@@ -449,88 +467,112 @@ public class MainActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private void analyzeImage(ImageProxy imageProxy) {
-        long currentTime = System.currentTimeMillis();
-
+    /**
+     * Анализ с разрешением текущего режима; ближайшее поддерживаемое, если точного нет
+     */
+    private ImageAnalysis buildImageAnalysis(Size resolution) {
+        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(resolution,
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build();
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setResolutionSelector(resolutionSelector)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+        analysis.setAnalyzer(cameraExecutor, this::analyzeImage);
+        return analysis;
+    }
 
-        if (isRecognizing || (currentTime - lastRecognitionTime < FACE_RECOGNITION_INTERVAL)) {
-            imageProxy.close();
+    /**
+     * Перепривязывает только анализ — превью остаётся на месте
+     */
+    private void rebindAnalysis(Size resolution) {
+        if (cameraProvider == null || imageAnalysis == null || isDestroyed()) {
             return;
         }
-
         try {
-            InputImage image = InputImage.fromMediaImage(
-                    imageProxy.getImage(),
-                    imageProxy.getImageInfo().getRotationDegrees()
-            );
-
-            faceDetector.process(image)
-                    .addOnSuccessListener(faces -> {
-                        runOnUiThread(() -> {
-                            if (faces != null && !faces.isEmpty()) {
-                                faceOverlay.setFaces(faces);
-                            } else {
-                                faceOverlay.clearFaces();
-                            }
-                        });
-
-                        if (faces != null && !faces.isEmpty()) {
-                            lastRecognitionTime = currentTime;
-                            Face face = faces.get(0);
-
-                            Bitmap bitmap = ImageUtils.imageProxyToBitmap(imageProxy);
-                            if (bitmap != null) {
-                                Bitmap faceBitmap = extractFaceBitmap(bitmap, face);
-                                if (faceBitmap != null) {
-                                    viewModel.analyzeFaceFrame(faceBitmap);
-                                }
-                            }
-                        } else {
-                            runOnUiThread(() -> {
-                                viewModel.clearCurrentUser();
-                            });
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Face detection failed: " + e.getMessage());
-                        runOnUiThread(() -> faceOverlay.clearFaces());
-                    })
-                    .addOnCompleteListener(task -> {
-                        imageProxy.close();
-                    });
-
+            ImageAnalysis next = buildImageAnalysis(resolution);
+            cameraProvider.unbind(imageAnalysis);
+            imageAnalysis = next;
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis);
         } catch (Exception e) {
-            Log.e(TAG, "Image analysis error: " + e.getMessage());
+            Log.e(TAG, "Failed to change analysis resolution: " + e.getMessage(), e);
+        }
+    }
+
+    private void analyzeImage(ImageProxy imageProxy) {
+        long currentTime = System.currentTimeMillis();
+        FaceAnalysisPipeline pipeline = analysisPipeline;
+
+        if (pipeline == null || currentTime - lastRecognitionTime < TRACK_FRAME_INTERVAL
+                || !analysisMode.shouldAnalyze(currentTime)) {
             imageProxy.close();
+            return;
         }
+
+        // Кадр переходит конвейеру: он сам закроет его после детекции и вырезания лиц
+        pipeline.submit(imageProxy);
     }
 
-    private Bitmap extractFaceBitmap(Bitmap originalBitmap, Face face) {
-        try {
-            android.graphics.Rect bounds = face.getBoundingBox();
+    /**
+     * Решения конвейера вызываются из его потоков, UI обновляется через runOnUiThread
+     */
+    private FaceAnalysisPipeline.Listener createPipelineListener() {
+        return new FaceAnalysisPipeline.Listener() {
+            @Override
+            public void onFacesDetected(List<Face> faces, float detectMs) {
+                analysisMode.onDetection(!faces.isEmpty(), detectMs);
+                runOnUiThread(() -> {
+                    if (!faces.isEmpty()) {
+                        faceOverlay.setFaces(faces);
+                    } else {
+                        faceOverlay.clearFaces();
+                    }
+                    viewModel.onFrameFaces(!faces.isEmpty());
+                });
+            }
 
-            float scale = 1.3f;
-            int width = (int) (bounds.width() * scale);
-            int height = (int) (bounds.height() * scale);
-            int centerX = bounds.centerX();
-            int centerY = bounds.centerY();
+            @Override
+            public void onDetectionFailed(String error) {
+                runOnUiThread(() -> faceOverlay.clearFaces());
+            }
 
-            int left = Math.max(centerX - width / 2, 0);
-            int top = Math.max(centerY - height / 2, 0);
-            int right = Math.min(centerX + width / 2, originalBitmap.getWidth());
-            int bottom = Math.min(centerY + height / 2, originalBitmap.getHeight());
+            @Override
+            public boolean needsRecognition(int trackingId, Rect bounds) {
+                if (!viewModel.needsRecognition(trackingId, bounds)) {
+                    return false; // Известный трек не требует ни битмапа, ни эмбеддинга
+                }
+                lastRecognitionTime = System.currentTimeMillis();
+                return true;
+            }
 
-            if (right - left <= 0 || bottom - top <= 0) {
-                return null;
+            @Override
+            public boolean acceptUntrackedFace() {
+                long now = System.currentTimeMillis();
+                if (isRecognizing || now - lastRecognitionTime < FACE_RECOGNITION_INTERVAL) {
+                    return false;
+                }
+                lastRecognitionTime = now;
+                return true;
             }
 
-            return Bitmap.createBitmap(originalBitmap, left, top, right - left, bottom - top);
+            @Override
+            public void onUntrackedFace(Bitmap faceBitmap) {
+                viewModel.analyzeFaceFrame(faceBitmap);
+            }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error extracting face bitmap: " + e.getMessage());
-            return null;
-        }
+            @Override
+            public void onTrackCandidates(List<Integer> trackingIds, List<Rect> bounds,
+                                          List<FaceRecognitionInterface.SearchResult> candidates,
+                                          boolean primaryFirst) {
+                viewModel.onTrackCandidates(trackingIds, bounds, candidates, primaryFirst);
+            }
+
+            @Override
+            public void onMetrics(List<PipelineStage.Metrics> metrics) {
+                analysisMode.onPipelineMetrics(metrics);
+            }
+        };
     }
 
     @Override
@@ -539,8 +581,8 @@ public class MainActivity extends AppCompatActivity {
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
-        if (faceDetector != null) {
-            faceDetector.close();
+        if (analysisPipeline != null) {
+            analysisPipeline.shutdown();
         }
         if (viewModel != null) {
             viewModel.cleanup();
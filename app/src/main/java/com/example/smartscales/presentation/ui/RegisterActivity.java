@@ -19,20 +19,29 @@ import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.example.smartscales.App;
 import com.example.smartscales.R;
+import com.example.smartscales.domain.interfaces.FaceDetectionInterface;
 import com.example.smartscales.presentation.viewmodels.RegisterViewModel;
 import com.example.smartscales.utils.CameraHelper;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class RegisterActivity extends AppCompatActivity {
 
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
+    private static final int ENROLLMENT_SHOTS = 5; // Фото для регистрации: разные ракурсы и освещение
 
     private CameraHelper cameraHelper;
     private RegisterViewModel viewModel;
+    private FaceDetectionInterface faceDetection;
 
     private PreviewView previewView;
     private ImageView ivPreview;
@@ -43,13 +52,14 @@ public class RegisterActivity extends AppCompatActivity {
     private LinearProgressIndicator progressBar;
     private View cardPreview, cardPhotoPreview;
 
-    private Bitmap capturedPhoto;
+    private final List<Bitmap> capturedPhotos = new ArrayList<>();
     private boolean isPhotoTaken = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_register);
+        faceDetection = ((App) getApplication()).getFaceDetection();
 
         initViews();
         initViewModel();
@@ -192,20 +202,69 @@ public class RegisterActivity extends AppCompatActivity {
                 return;
             }
 
-            capturedPhoto = bitmap;
-            ivPreview.setImageBitmap(capturedPhoto);
+            // Тот же точный детектор, что и при регистрации: фото без лица отбрасываются сразу
+            tvInstruction.setText("🔍 Проверка лица...");
+            faceDetection.detectFaces(InputImage.fromBitmap(bitmap, 0), FaceDetectionInterface.Tier.LANDMARKS,
+                    new FaceDetectionInterface.FaceDetectionCallback() {
+                        @Override
+                        public void onFacesDetected(List<Face> faces) {
+                            if (isFinishing() || isDestroyed()) {
+                                bitmap.recycle(); // Проверка пережила экран — фото уже некуда добавить
+                            } else if (faces.isEmpty()) {
+                                rejectPhoto(bitmap);
+                            } else {
+                                acceptPhoto(bitmap);
+                            }
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            // Не мешаем регистрации: лицо всё равно ищется ещё раз при сохранении
+                            Log.w("RegisterActivity", "Проверка лица не удалась: " + error);
+                            if (isFinishing() || isDestroyed()) {
+                                bitmap.recycle();
+                            } else {
+                                acceptPhoto(bitmap);
+                            }
+                        }
+                    });
+        });
+    }
 
-            // Show photo preview, hide camera preview
-            cardPreview.setVisibility(View.GONE);
-//            cardPhotoPreview.setVisibility(View.VISIBLE);
+    private void rejectPhoto(Bitmap bitmap) {
+        bitmap.recycle();
+        int shots = capturedPhotos.size();
+        Toast.makeText(this, "Лицо не найдено, снимите ещё раз", Toast.LENGTH_SHORT).show();
+        btnTakePhoto.setEnabled(true);
+        btnTakePhoto.setText(shots == 0 ? "📸 Сделать фото"
+                : "📸 Ещё фото (" + shots + "/" + ENROLLMENT_SHOTS + ")");
+        tvInstruction.setText("❌ Лицо не найдено. Расположите лицо в рамке");
+    }
 
-            btnTakePhoto.setVisibility(View.GONE);
-            btnRetake.setVisibility(View.VISIBLE);
-            btnSave.setEnabled(true);
+    private void acceptPhoto(Bitmap bitmap) {
+        capturedPhotos.add(bitmap);
+        ivPreview.setImageBitmap(bitmap);
+        int shots = capturedPhotos.size();
+
+        btnRetake.setVisibility(View.VISIBLE);
+        btnSave.setEnabled(true);
+        isPhotoTaken = true;
+
+        if (shots < ENROLLMENT_SHOTS) {
+            // Камера остаётся открытой: каждое следующее фото делает эмбеддинг устойчивее
+            btnTakePhoto.setEnabled(true);
+            btnTakePhoto.setText("📸 Ещё фото (" + shots + "/" + ENROLLMENT_SHOTS + ")");
+            tvInstruction.setText("✅ Фото " + shots + " из " + ENROLLMENT_SHOTS +
+                    ". Немного поверните голову и снимите ещё или заполните данные");
+            return;
+        }
 
-            tvInstruction.setText("✅ Фото сделано! Заполните данные");
-            isPhotoTaken = true;
-        });
+        // Show photo preview, hide camera preview
+        cardPreview.setVisibility(View.GONE);
+//            cardPhotoPreview.setVisibility(View.VISIBLE);
+
+        btnTakePhoto.setVisibility(View.GONE);
+        tvInstruction.setText("✅ Фото сделаны! Заполните данные");
     }
 
     private void takePhoto() {
@@ -221,7 +280,7 @@ public class RegisterActivity extends AppCompatActivity {
     }
 
     private void retakePhoto() {
-        capturedPhoto = null;
+        recycleCapturedPhotos();
 
         // Show camera preview again
         cardPreview.setVisibility(View.VISIBLE);
@@ -243,7 +302,7 @@ public class RegisterActivity extends AppCompatActivity {
             return;
         }
 
-        if (!isPhotoTaken || capturedPhoto == null) {
+        if (!isPhotoTaken || capturedPhotos.isEmpty()) {
             Toast.makeText(this, "Сначала сделайте фотографию", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -254,12 +313,11 @@ public class RegisterActivity extends AppCompatActivity {
         float targetWeight = parseFloat(etTargetWeight.getText().toString());
 
         Log.d("RegisterActivity", "Сохранение пользователя: " + userName);
-        Log.d("RegisterActivity", "Размер фото: " +
-                capturedPhoto.getWidth() + "x" + capturedPhoto.getHeight());
+        Log.d("RegisterActivity", "Фото для регистрации: " + capturedPhotos.size());
         Log.d("RegisterActivity", "Вес: " + initialWeight + " -> " + targetWeight);
 
         // Call ViewModel to register user
-        viewModel.registerUser(userName, capturedPhoto, initialWeight, targetWeight);
+        viewModel.registerUser(userName, new ArrayList<>(capturedPhotos), initialWeight, targetWeight);
     }
 
     private boolean validateInputs() {
@@ -330,9 +388,17 @@ public class RegisterActivity extends AppCompatActivity {
         if (cameraHelper != null) {
             cameraHelper.stopCamera();
         }
-        if (capturedPhoto != null && !capturedPhoto.isRecycled()) {
-            capturedPhoto.recycle();
+        recycleCapturedPhotos();
+    }
+
+    private void recycleCapturedPhotos() {
+        ivPreview.setImageBitmap(null);
+        for (Bitmap photo : capturedPhotos) {
+            if (!photo.isRecycled()) {
+                photo.recycle();
+            }
         }
+        capturedPhotos.clear();
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.example.smartscales.presentation.viewmodels;
 
 import android.app.Application;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -17,6 +18,9 @@ import com.example.smartscales.data.models.WeightMeasurement;
 import com.example.smartscales.data.repository.UserRepository;
 import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
 import com.example.smartscales.domain.interfaces.ScaleInterface;
+import com.example.smartscales.domain.services.FaceRecognitionService;
+import com.example.smartscales.domain.services.FaceTrackVoter;
+import com.example.smartscales.domain.services.TrackIdentityCache;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -27,10 +31,14 @@ public class MainViewModel extends AndroidViewModel {
     private static final String TAG = "MainViewModel";
     private static final float WEIGHT_STABILITY_THRESHOLD = 0.2f;
     private static final long WEIGHT_STABLE_TIME = 3000;
+    private static final int EMPTY_FRAMES_TO_RESET = 5; // Моргание/поворот головы — ещё не уход
 
     private UserRepository userRepository;
     private ScaleInterface scaleService;
-    private FaceRecognitionInterface faceRecognition;
+    private volatile FaceRecognitionInterface faceRecognition; // null до готовности движка
+    private final FaceTrackVoter trackVoter = new FaceTrackVoter(
+            FaceRecognitionService.RECOGNITION_THRESHOLD, FaceRecognitionService.MIN_MATCH_MARGIN);
+    private final TrackIdentityCache identityCache = new TrackIdentityCache();
 
     // LiveData
     private MutableLiveData<String> status = new MutableLiveData<>("Инициализация...");
@@ -48,6 +56,7 @@ public class MainViewModel extends AndroidViewModel {
     private float lastStableWeight = 0;
     private long lastWeightChangeTime = 0;
     private boolean isWeightStable = false;
+    private int emptyFrames = 0; // Подряд кадров без лиц, только в главном потоке
 
     public MainViewModel(@NonNull Application application) {
         super(application);
@@ -58,13 +67,24 @@ public class MainViewModel extends AndroidViewModel {
         userRepository = new UserRepository(application);
 
         App app = (App) application;
-        faceRecognition = app.getFaceRecognition();
         scaleService = app.getScaleService();
 
         setupScaleListener();
         loadInitialData();
 
-        status.setValue("✅ Система готова. Встаньте на весы.");
+        status.setValue("⏳ Загрузка модели распознавания...");
+        app.whenFaceRecognitionReady(new App.FaceRecognitionReadyCallback() {
+            @Override
+            public void onReady(FaceRecognitionInterface ready) {
+                faceRecognition = ready;
+                status.setValue("✅ Система готова. Встаньте на весы.");
+            }
+
+            @Override
+            public void onError(String error) {
+                status.setValue("❌ " + error);
+            }
+        });
     }
 
     private void setupScaleListener() {
@@ -122,7 +142,7 @@ public class MainViewModel extends AndroidViewModel {
     }
 
     public void analyzeFaceFrame(Bitmap faceBitmap) {
-        if (Boolean.TRUE.equals(isRecognizing.getValue())) {
+        if (faceRecognition == null || Boolean.TRUE.equals(isRecognizing.getValue())) {
             return;
         }
 
@@ -133,29 +153,7 @@ public class MainViewModel extends AndroidViewModel {
                     @Override
                     public void onSuccess(User user, float confidence) {
                         isRecognizing.postValue(false);
-                        recognitionConfidence.postValue(confidence);
-
-                        // Загружаем полные данные пользователя
-                        userRepository.getUserById(user.getId(), new UserRepository.RepositoryCallback<User>() {
-                            @Override
-                            public void onSuccess(User fullUser) {
-                                currentUser.postValue(fullUser);
-                                loadUserWeightData(fullUser.getId());
-                                updateWeightChanges(fullUser.getId());
-
-                                String message = String.format(Locale.getDefault(),
-                                        "✅ %s распознан (%.0f%%)",
-                                        fullUser.getName(), confidence * 100);
-                                status.postValue(message);
-                            }
-
-                            @Override
-                            public void onError(Exception error) {
-                                // Используем базовые данные
-                                currentUser.postValue(user);
-                                status.postValue("Пользователь распознан, но данные не загружены");
-                            }
-                        });
+                        showRecognizedUser(user.getId(), user, confidence);
                     }
 
                     @Override
@@ -179,6 +177,126 @@ public class MainViewModel extends AndroidViewModel {
                 });
     }
 
+    /**
+     * Нужно ли распознавать кадр лица с этим trackingId.
+     * false, пока пользователь трека известен из кэша и не пора его перепроверять.
+     * Рамка — в координатах, не зависящих от разрешения анализа (FaceAnalysisPipeline)
+     */
+    public boolean needsRecognition(int trackingId, Rect bounds) {
+        long now = System.currentTimeMillis();
+        switch (identityCache.check(trackingId, bounds, now)) {
+            case HIT:
+                return false;
+            case VERIFY:
+                return true;
+            case EXPIRED:
+                trackVoter.reset(trackingId);
+                return trackVoter.needsFrame(trackingId, now);
+            default:
+                return trackVoter.needsFrame(trackingId, now);
+        }
+    }
+
+    /**
+     * Кандидаты для лиц отслеживаемых треков одного кадра: кандидаты копятся по каждому
+     * треку, пользователь выбирается голосованием по нескольким кадрам, а не по одному.
+     * Для уже известного трека кадр только подтверждает закэшированного пользователя.
+     * Списки параллельны; при primaryFirst первое лицо — основное для экрана
+     */
+    public void onTrackCandidates(List<Integer> trackingIds, List<Rect> bounds,
+                                  List<FaceRecognitionInterface.SearchResult> candidates,
+                                  boolean primaryFirst) {
+        long now = System.currentTimeMillis();
+        FaceTrackVoter.Decision shown = null;
+        boolean primaryVoting = false;
+        for (int i = 0; i < trackingIds.size(); i++) {
+            int trackingId = trackingIds.get(i);
+            Integer cachedUserId = identityCache.getUserId(trackingId);
+            if (cachedUserId != null) {
+                verifyTrack(trackingId, cachedUserId, candidates.get(i), now);
+                continue;
+            }
+
+            FaceTrackVoter.Decision decision = trackVoter.addFrame(trackingId, candidates.get(i), now);
+            if (decision == null) {
+                primaryVoting |= primaryFirst && i == 0;
+                continue;
+            }
+            identityCache.put(trackingId, decision.userId, bounds.get(i), now);
+            Log.d(TAG, "Трек " + trackingId + ": решение за " + decision.frames +
+                    " кадров, пользователь " + decision.userId);
+            // На экран — первый узнанный; неизвестный — только для основного лица
+            if (decision.isKnown() ? shown == null || !shown.isKnown() : shown == null && primaryFirst && i == 0) {
+                shown = decision;
+            }
+        }
+
+        if (shown == null) {
+            if (primaryVoting) {
+                isRecognizing.postValue(true);
+            }
+            return;
+        }
+        isRecognizing.postValue(false);
+        if (shown.isKnown()) {
+            showRecognizedUser(shown.userId, null, shown.confidence);
+        } else {
+            currentUser.postValue(null);
+            status.postValue("👤 Неизвестный пользователь");
+        }
+    }
+
+    /**
+     * Проверочный кадр: тот же лидер (или по-прежнему никто) — продлеваем кэш,
+     * иначе трек голосуется заново
+     */
+    private void verifyTrack(int trackingId, int cachedUserId,
+                             FaceRecognitionInterface.SearchResult candidates, long now) {
+        boolean matched = !candidates.isEmpty()
+                && candidates.getSimilarity(0) >= FaceRecognitionService.RECOGNITION_THRESHOLD;
+        boolean confirmed = cachedUserId == FaceTrackVoter.UNKNOWN_USER
+                ? !matched
+                : matched && candidates.getUserId(0) == cachedUserId;
+
+        if (confirmed) {
+            identityCache.confirm(trackingId, now);
+            return;
+        }
+        Log.d(TAG, "Трек " + trackingId + ": пользователь " + cachedUserId + " не подтверждён");
+        identityCache.remove(trackingId);
+        trackVoter.reset(trackingId);
+    }
+
+    private void showRecognizedUser(int userId, User fallbackUser, float confidence) {
+        recognitionConfidence.postValue(confidence);
+
+        // Загружаем полные данные пользователя
+        userRepository.getUserById(userId, new UserRepository.RepositoryCallback<User>() {
+            @Override
+            public void onSuccess(User fullUser) {
+                if (fullUser == null) {
+                    currentUser.postValue(fallbackUser);
+                    return;
+                }
+                currentUser.postValue(fullUser);
+                loadUserWeightData(fullUser.getId());
+                updateWeightChanges(fullUser.getId());
+
+                String message = String.format(Locale.getDefault(),
+                        "✅ %s распознан (%.0f%%)",
+                        fullUser.getName(), confidence * 100);
+                status.postValue(message);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                // Используем базовые данные
+                currentUser.postValue(fallbackUser);
+                status.postValue("Пользователь распознан, но данные не загружены");
+            }
+        });
+    }
+
     private void loadUserWeightData(int userId) {
         userRepository.getLastWeekMeasurements(userId, new UserRepository.RepositoryCallback<List<WeightMeasurement>>() {
             @Override
@@ -244,7 +362,22 @@ public class MainViewModel extends AndroidViewModel {
         return String.format(Locale.getDefault(), "%s%.1f кг", sign, Math.abs(change));
     }
 
+    /**
+     * Результат детекции кадра, вызывается в главном потоке. Один пустой кадр кэш треков
+     * и голосование не сбрасывает: треки сами истекают по таймаутам TrackIdentityCache
+     * и FaceTrackVoter, а пользователь считается ушедшим после EMPTY_FRAMES_TO_RESET кадров подряд
+     */
+    public void onFrameFaces(boolean hasFaces) {
+        if (hasFaces) {
+            emptyFrames = 0;
+        } else if (++emptyFrames == EMPTY_FRAMES_TO_RESET) {
+            clearCurrentUser();
+        }
+    }
+
     public void clearCurrentUser() {
+        trackVoter.clear();
+        identityCache.clear();
         currentUser.postValue(null);
         weightData.postValue(null);
         weightChangeYesterday.postValue("--");
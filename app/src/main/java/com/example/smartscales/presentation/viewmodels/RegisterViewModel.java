@@ -13,11 +13,14 @@ import com.example.smartscales.data.models.User;
 import com.example.smartscales.data.repository.UserRepository;
 import com.example.smartscales.domain.interfaces.FaceRecognitionInterface;
 
+import java.util.List;
+
 public class RegisterViewModel extends AndroidViewModel {
     private static final String TAG = "RegisterViewModel";
 
     private UserRepository userRepository;
-    private FaceRecognitionInterface faceRecognitionService;
+    private FaceRecognitionInterface faceRecognitionService; // null до готовности движка
+    private String faceRecognitionError;
 
     private MutableLiveData<Boolean> registrationSuccess = new MutableLiveData<>(false);
     private MutableLiveData<String> errorMessage = new MutableLiveData<>();
@@ -27,10 +30,23 @@ public class RegisterViewModel extends AndroidViewModel {
         super(application);
         userRepository = new UserRepository(application);
         App app = (App) application;
-        faceRecognitionService = app.getFaceRecognition();
+        app.whenFaceRecognitionReady(new App.FaceRecognitionReadyCallback() {
+            @Override
+            public void onReady(FaceRecognitionInterface faceRecognition) {
+                faceRecognitionService = faceRecognition;
+            }
+
+            @Override
+            public void onError(String error) {
+                faceRecognitionError = error;
+            }
+        });
     }
 
-    public void registerUser(String name, Bitmap faceImage, float initialWeight, float targetWeight) {
+    /**
+     * @param faceImages несколько фото одного человека; итоговый эмбеддинг сводится по всем
+     */
+    public void registerUser(String name, List<Bitmap> faceImages, float initialWeight, float targetWeight) {
         Log.d(TAG, "Начало регистрации пользователя: " + name);
 
         if (name == null || name.trim().isEmpty()) {
@@ -38,14 +54,20 @@ public class RegisterViewModel extends AndroidViewModel {
             return;
         }
 
-        if (faceImage == null) {
+        if (faceImages == null || faceImages.isEmpty()) {
             errorMessage.postValue("Сделайте фотографию для регистрации");
             return;
         }
 
+        if (faceRecognitionService == null) {
+            errorMessage.postValue(faceRecognitionError != null ? faceRecognitionError
+                    : "Модель распознавания ещё загружается, попробуйте через несколько секунд");
+            return;
+        }
+
         registrationProgress.postValue(true);
 
-        userRepository.addUserWithFace(name, faceImage, initialWeight, targetWeight,
+        userRepository.addUserWithFace(name, faceImages, initialWeight, targetWeight,
                 faceRecognitionService,
                 new UserRepository.UserRegistrationCallback() {
                     @Override
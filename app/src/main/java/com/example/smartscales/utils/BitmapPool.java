@@ -0,0 +1,40 @@
+package com.example.smartscales.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Пул изменяемых ARGB Bitmap одного размера для конвейера: области и выровненные лица
+ * переходят между стадиями и возвращаются после использования, а не создаются на каждое лицо.
+ * Если пул пуст, создаётся новый Bitmap; сверх capacity возвращённые не хранятся.
+ */
+public final class BitmapPool {
+    private final int width;
+    private final int height;
+    private final int capacity;
+    private final ArrayDeque<Bitmap> free;
+
+    public BitmapPool(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+        this.free = new ArrayDeque<>(capacity);
+    }
+
+    public synchronized Bitmap acquire() {
+        Bitmap bitmap = free.pollFirst();
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Bitmap не из этого пула (другого размера) или лишний просто отпускается
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || bitmap.getWidth() != width
+                || bitmap.getHeight() != height || free.size() >= capacity) {
+            return;
+        }
+        free.addFirst(bitmap);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.smartscales.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Перевод Bitmap во входной тензор модели [H, W, 3] без выделения памяти на кадр.
+ *
+ * Масштабирование — в переиспользуемый Bitmap через Canvas, пиксели читаются одним
+ * getPixels, нормализация — по таблице на 256 значений, запись — одним bulk put
+ * в FloatBuffer-представление direct-буфера. Все промежуточные массивы — на поток.
+ *
+ * Для квантованных моделей таблица сразу даёт квантованный байт: нормализация
+ * и квантование входа сводятся к одному обращению на канал, без float.
+ */
+public class BitmapTensorConverter {
+    private final int width;
+    private final int height;
+    private final float[] normalized = new float[256];
+    private final byte[] quantized = new byte[256];
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Значение канала v записывается как (v - mean) / std
+     */
+    public BitmapTensorConverter(int width, int height, float mean, float std) {
+        this(width, height, mean, std, 0, 0, false);
+    }
+
+    /**
+     * Для квантованного входа: нормализованное значение x записывается как
+     * round(x / scale) + zeroPoint, с насыщением до uint8 или int8 (signed)
+     */
+    public BitmapTensorConverter(int width, int height, float mean, float std,
+                                 float scale, int zeroPoint, boolean signed) {
+        this.width = width;
+        this.height = height;
+        int min = signed ? Byte.MIN_VALUE : 0;
+        int max = signed ? Byte.MAX_VALUE : 255;
+        for (int v = 0; v < normalized.length; v++) {
+            normalized[v] = (v - mean) / std;
+            if (scale > 0) {
+                int q = Math.round(normalized[v] / scale) + zeroPoint;
+                quantized[v] = (byte) Math.max(min, Math.min(max, q));
+            }
+        }
+    }
+
+    /**
+     * Нормализованные float RGB для index-го элемента батча [N, H, W, 3]; позиция dst после вызова — 0
+     */
+    public void toFloat(Bitmap source, FloatBuffer dst, int index) {
+        Scratch s = scratch.get();
+        int[] pixels = readPixels(source, s);
+        float[] values = s.floats;
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+            int color = pixels[i];
+            values[j] = normalized[(color >> 16) & 0xFF];
+            values[j + 1] = normalized[(color >> 8) & 0xFF];
+            values[j + 2] = normalized[color & 0xFF];
+        }
+        dst.position(index * values.length);
+        dst.put(values);
+        dst.rewind();
+    }
+
+    /**
+     * Квантованные RGB (см. конструктор) для index-го элемента батча; позиция dst после вызова — 0
+     */
+    public void toQuantized(Bitmap source, ByteBuffer dst, int index) {
+        Scratch s = scratch.get();
+        int[] pixels = readPixels(source, s);
+        byte[] values = s.bytes;
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+            int color = pixels[i];
+            values[j] = quantized[(color >> 16) & 0xFF];
+            values[j + 1] = quantized[(color >> 8) & 0xFF];
+            values[j + 2] = quantized[color & 0xFF];
+        }
+        dst.position(index * values.length);
+        dst.put(values);
+        dst.rewind();
+    }
+
+    private int[] readPixels(Bitmap source, Scratch s) {
+        Bitmap input = source;
+        if (source.getWidth() != width || source.getHeight() != height) {
+            s.canvas.drawBitmap(source, null, s.bounds, s.paint);
+            input = s.scaled;
+        }
+        input.getPixels(s.pixels, 0, width, 0, 0, width, height);
+        return s.pixels;
+    }
+
+    private final class Scratch {
+        final Bitmap scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(scaled);
+        final Rect bounds = new Rect(0, 0, width, height);
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final int[] pixels = new int[width * height];
+        final float[] floats = new float[width * height * 3];
+        final byte[] bytes = new byte[width * height * 3];
+    }
+}
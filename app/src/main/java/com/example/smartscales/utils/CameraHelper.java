@@ -6,10 +6,7 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
 import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.os.Environment;
 import android.util.Log;
 
@@ -27,10 +24,8 @@ import androidx.lifecycle.LifecycleOwner;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -39,8 +34,6 @@ import java.util.concurrent.Executors;
 
 public class CameraHelper {
     private static final String TAG = "CameraHelper";
-    private static final int IMAGE_QUALITY = 90;
-
     private Context context;
     private PreviewView previewView;
     private ProcessCameraProvider cameraProvider;
@@ -189,46 +182,17 @@ public class CameraHelper {
         }
     }
 
+    /**
+     * Кадр YUV_420_888 в Bitmap напрямую из плоскостей (с учётом stride), без JPEG
+     */
     public static Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
         try {
-            ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
-            if (planes == null || planes.length < 3) {
+            if (!YuvConverter.isSupported(imageProxy)) {
                 return null;
             }
-
-            ByteBuffer yBuffer = planes[0].getBuffer();
-            ByteBuffer uBuffer = planes[1].getBuffer();
-            ByteBuffer vBuffer = planes[2].getBuffer();
-
-            int ySize = yBuffer.remaining();
-            int uSize = uBuffer.remaining();
-            int vSize = vBuffer.remaining();
-
-            byte[] nv21 = new byte[ySize + uSize + vSize];
-
-            yBuffer.get(nv21, 0, ySize);
-            vBuffer.get(nv21, ySize, vSize);
-            uBuffer.get(nv21, ySize + vSize, uSize);
-
-            YuvImage yuvImage = new YuvImage(
-                    nv21,
-                    ImageFormat.NV21,
-                    imageProxy.getWidth(),
-                    imageProxy.getHeight(),
-                    null
-            );
-
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(
-                    new Rect(0, 0, imageProxy.getWidth(), imageProxy.getHeight()),
-                    IMAGE_QUALITY,
-                    out
-            );
-
-            byte[] imageBytes = out.toByteArray();
-            return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-
+            return YuvConverter.toBitmap(imageProxy);
         } catch (Exception e) {
+            Log.e(TAG, "imageProxyToBitmap error: " + e.getMessage());
             return null;
         }
     }
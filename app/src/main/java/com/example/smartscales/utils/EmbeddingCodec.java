@@ -0,0 +1,113 @@
+package com.example.smartscales.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Форматы хранения эмбеддинга в users.faceEmbedding.
+ *
+ * Старый формат — сырые big-endian float (4 байта на измерение, длина кратна 4).
+ * Формат int8 — [тег 'Q'][scale: big-endian float][D байт int8], длина 5 + D,
+ * вектор нормализован, v[i] ≈ scale * q[i]. Размеры моделей кратны 4,
+ * поэтому форматы различаются по длине без отдельной миграции.
+ */
+public class EmbeddingCodec {
+    public static final byte INT8_TAG = 'Q';
+    public static final int INT8_HEADER_SIZE = 5;
+
+    public static boolean isInt8(byte[] blob) {
+        return blob != null && blob.length > INT8_HEADER_SIZE
+                && blob.length % 4 != 0 && blob[0] == INT8_TAG;
+    }
+
+    public static int dimensionOf(byte[] blob) {
+        if (blob == null) {
+            return 0;
+        }
+        return isInt8(blob) ? blob.length - INT8_HEADER_SIZE : blob.length / 4;
+    }
+
+    /**
+     * Длины блобов размерности dimension: {float, int8}. Форматы не пересекаются по длине,
+     * поэтому по ней можно отбирать строки одной размерности прямо в SQL
+     */
+    public static int[] blobLengths(int dimension) {
+        return new int[]{dimension * 4, INT8_HEADER_SIZE + dimension};
+    }
+
+    public static byte[] encodeFloat(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
+        buffer.asFloatBuffer().put(embedding);
+        return buffer.array();
+    }
+
+    public static byte[] encodeInt8(float[] embedding) {
+        byte[] blob = new byte[INT8_HEADER_SIZE + embedding.length];
+        float scale = quantize(embedding, 0, embedding.length, blob, INT8_HEADER_SIZE);
+        blob[0] = INT8_TAG;
+        ByteBuffer.wrap(blob, 1, 4).putFloat(scale);
+        return blob;
+    }
+
+    public static float[] decode(byte[] blob) {
+        float[] embedding = new float[dimensionOf(blob)];
+        decodeInto(blob, embedding);
+        return embedding;
+    }
+
+    /**
+     * Декодирует blob в dst без промежуточных буферов; dst должен вмещать dimensionOf(blob) значений.
+     * @return размерность эмбеддинга
+     */
+    public static int decodeInto(byte[] blob, float[] dst) {
+        int dimension = dimensionOf(blob);
+        if (dst.length < dimension) {
+            throw new IllegalArgumentException("Buffer too small: " + dst.length + " < " + dimension);
+        }
+        if (isInt8(blob)) {
+            float scale = int8Scale(blob);
+            for (int i = 0; i < dimension; i++) {
+                dst[i] = blob[INT8_HEADER_SIZE + i] * scale;
+            }
+            return dimension;
+        }
+        for (int i = 0, offset = 0; i < dimension; i++, offset += 4) {
+            int bits = (blob[offset] & 0xFF) << 24 | (blob[offset + 1] & 0xFF) << 16
+                    | (blob[offset + 2] & 0xFF) << 8 | (blob[offset + 3] & 0xFF);
+            dst[i] = Float.intBitsToFloat(bits);
+        }
+        return dimension;
+    }
+
+    public static float int8Scale(byte[] blob) {
+        return ByteBuffer.wrap(blob, 1, 4).getFloat();
+    }
+
+    /**
+     * Нормализует src[srcOffset..srcOffset+length) и квантует в int8 симметрично.
+     * @return масштаб, при котором нормализованный v[i] ≈ scale * dst[i]
+     */
+    public static float quantize(float[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        float sum = 0;
+        float maxAbs = 0;
+        for (int i = srcOffset; i < srcOffset + length; i++) {
+            float v = src[i];
+            sum += v * v;
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        if (sum == 0 || maxAbs == 0) {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = 0;
+            }
+            return 0;
+        }
+
+        float norm = (float) Math.sqrt(sum);
+        float scale = maxAbs / norm / 127f;
+        float inverse = 127f / maxAbs;
+        for (int i = 0; i < length; i++) {
+            int q = Math.round(src[srcOffset + i] * inverse);
+            dst[dstOffset + i] = (byte) Math.max(-127, Math.min(127, q));
+        }
+        return scale;
+    }
+}
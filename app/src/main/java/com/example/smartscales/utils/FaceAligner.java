@@ -0,0 +1,211 @@
+package com.example.smartscales.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceLandmark;
+
+/**
+ * Выравнивание лица к каноническому шаблону ArcFace 112×112 за один проход.
+ *
+ * По точкам ML Kit (глаза, основание носа, углы рта) методом наименьших квадратов
+ * строится преобразование подобия (поворот, масштаб, сдвиг) в точки шаблона,
+ * и исходный кадр рисуется через эту матрицу сразу в выходной Bitmap — без
+ * промежуточных вырезок и масштабирования. Без точек глаз — по рамке и наклону головы.
+ */
+public class FaceAligner {
+    public static final int TEMPLATE_SIZE = 112;
+
+    // Шаблон ArcFace в координатах 112×112; "левый" — левый на изображении,
+    // то есть правый глаз и правый угол рта человека
+    static final float[][] TEMPLATE = {
+            {38.2946f, 51.6963f}, // Глаз слева на изображении
+            {73.5318f, 51.5014f}, // Глаз справа на изображении
+            {56.0252f, 71.7366f}, // Нос
+            {41.5493f, 92.3655f}, // Угол рта слева на изображении
+            {70.7299f, 92.2041f}  // Угол рта справа на изображении
+    };
+    private static final int[] LANDMARKS = {
+            FaceLandmark.RIGHT_EYE,
+            FaceLandmark.LEFT_EYE,
+            FaceLandmark.NOSE_BASE,
+            FaceLandmark.MOUTH_RIGHT,
+            FaceLandmark.MOUTH_LEFT
+    };
+    private static final float BOX_CROP_SCALE = 1.3f; // Запас вокруг рамки, если точек нет
+
+    private final int size;
+    private final float templateScale;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public FaceAligner(int size) {
+        this.size = size;
+        this.templateScale = (float) size / TEMPLATE_SIZE;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Выровненное лицо в новом Bitmap size×size — для результатов, которые живут дольше кадра
+     */
+    public Bitmap align(Bitmap source, Face face) {
+        Bitmap output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        return align(source, face, output) ? output : null;
+    }
+
+    /**
+     * Выровненное лицо в переиспользуемый Bitmap потока; действителен до следующего вызова
+     * в этом же потоке
+     */
+    public Bitmap alignReusing(Bitmap source, Face face) {
+        Scratch s = scratch.get();
+        return align(source, face, s.output) ? s.output : null;
+    }
+
+    /**
+     * Рисует выровненное лицо в output (size×size, изменяемый).
+     * @return false, если рамка лица вне кадра
+     */
+    public boolean align(Bitmap source, Face face, Bitmap output) {
+        Scratch s = scratch.get();
+        if (!computeTransform(face, source.getWidth(), source.getHeight(), s.matrix)) {
+            return false;
+        }
+        Canvas canvas = s.canvasFor(output);
+        canvas.drawColor(Color.BLACK); // Области вне кадра не должны остаться от прошлого лица
+        canvas.drawBitmap(source, s.matrix, paint);
+        return true;
+    }
+
+    /**
+     * Матрица из координат кадра (в которых ML Kit вернул лицо) в выход size×size.
+     * @return false, если рамка лица вне кадра
+     */
+    private boolean computeTransform(Face face, int frameWidth, int frameHeight, Matrix out) {
+        return computeLandmarkTransform(face, scratch.get(), out)
+                || computeBoxTransform(face, frameWidth, frameHeight, out);
+    }
+
+    /**
+     * Подобие по доступным точкам; нужны хотя бы оба глаза
+     */
+    private boolean computeLandmarkTransform(Face face, Scratch s, Matrix out) {
+        int count = 0;
+        for (int i = 0; i < LANDMARKS.length; i++) {
+            FaceLandmark landmark = face.getLandmark(LANDMARKS[i]);
+            if (landmark == null) {
+                if (i < 2) {
+                    return false;
+                }
+                continue;
+            }
+            PointF point = landmark.getPosition();
+            s.src[count * 2] = point.x;
+            s.src[count * 2 + 1] = point.y;
+            s.dst[count * 2] = TEMPLATE[i][0] * templateScale;
+            s.dst[count * 2 + 1] = TEMPLATE[i][1] * templateScale;
+            count++;
+        }
+        if (!solveSimilarity(s.src, s.dst, count, s.values)) {
+            return false;
+        }
+        out.setValues(s.values);
+        return true;
+    }
+
+    /**
+     * Наименьшие квадраты для dst = [a -b; b a] * src + t по count парам точек (x, y).
+     * @param values 9 значений матрицы в порядке Matrix.getValues
+     * @return false, если все исходные точки совпадают
+     */
+    static boolean solveSimilarity(float[] src, float[] dst, int count, float[] values) {
+        float srcMeanX = 0, srcMeanY = 0, dstMeanX = 0, dstMeanY = 0;
+        for (int i = 0; i < count; i++) {
+            srcMeanX += src[i * 2];
+            srcMeanY += src[i * 2 + 1];
+            dstMeanX += dst[i * 2];
+            dstMeanY += dst[i * 2 + 1];
+        }
+        srcMeanX /= count;
+        srcMeanY /= count;
+        dstMeanX /= count;
+        dstMeanY /= count;
+
+        float dot = 0, cross = 0, norm = 0;
+        for (int i = 0; i < count; i++) {
+            float px = src[i * 2] - srcMeanX;
+            float py = src[i * 2 + 1] - srcMeanY;
+            float qx = dst[i * 2] - dstMeanX;
+            float qy = dst[i * 2 + 1] - dstMeanY;
+            dot += px * qx + py * qy;
+            cross += px * qy - py * qx;
+            norm += px * px + py * py;
+        }
+        if (norm <= 0) {
+            return false;
+        }
+        float a = dot / norm;
+        float b = cross / norm;
+        float tx = dstMeanX - (a * srcMeanX - b * srcMeanY);
+        float ty = dstMeanY - (b * srcMeanX + a * srcMeanY);
+
+        values[Matrix.MSCALE_X] = a;
+        values[Matrix.MSKEW_X] = -b;
+        values[Matrix.MTRANS_X] = tx;
+        values[Matrix.MSKEW_Y] = b;
+        values[Matrix.MSCALE_Y] = a;
+        values[Matrix.MTRANS_Y] = ty;
+        values[Matrix.MPERSP_0] = 0;
+        values[Matrix.MPERSP_1] = 0;
+        values[Matrix.MPERSP_2] = 1;
+        return true;
+    }
+
+    /**
+     * Квадрат вокруг рамки с запасом — в выход, с поворотом против наклона головы
+     */
+    private boolean computeBoxTransform(Face face, int frameWidth, int frameHeight, Matrix matrix) {
+        Rect bounds = face.getBoundingBox();
+        if (bounds.right <= 0 || bounds.bottom <= 0
+                || bounds.left >= frameWidth || bounds.top >= frameHeight) {
+            return false;
+        }
+        float side = Math.max(bounds.width(), bounds.height()) * BOX_CROP_SCALE;
+        if (side <= 0) {
+            return false;
+        }
+        matrix.setTranslate(-bounds.exactCenterX(), -bounds.exactCenterY());
+        matrix.postRotate(-face.getHeadEulerAngleZ());
+        matrix.postScale(size / side, size / side);
+        matrix.postTranslate(size / 2f, size / 2f);
+        return true;
+    }
+
+    private final class Scratch {
+        final Matrix matrix = new Matrix();
+        final float[] values = new float[9];
+        final float[] src = new float[LANDMARKS.length * 2];
+        final float[] dst = new float[LANDMARKS.length * 2];
+        final Bitmap output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas();
+
+        Canvas canvasFor(Bitmap target) {
+            canvas.setBitmap(target);
+            return canvas;
+        }
+    }
+}
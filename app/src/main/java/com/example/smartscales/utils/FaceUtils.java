@@ -2,37 +2,24 @@
 package com.example.smartscales.utils;
 
 import android.graphics.Bitmap;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 
 import com.google.mlkit.vision.face.Face;
 
 public class FaceUtils {
+    private static volatile FaceAligner aligner; // Последний размер; матрицы и Canvas у него на поток
 
+    /**
+     * Лицо, выровненное по точкам ML Kit, размером targetSize×targetSize (см. FaceAligner).
+     * Bitmap переиспользуется потоком: действителен до следующего вызова в этом же потоке
+     */
     public static Bitmap extractAlignedFace(Bitmap original, Face face, int targetSize) {
-        try {
-            Rect bounds = face.getBoundingBox();
-
-            int padding = (int) (bounds.width() * 0.2f);
-            int left = Math.max(bounds.left - padding, 0);
-            int top = Math.max(bounds.top - padding, 0);
-            int right = Math.min(bounds.right + padding, original.getWidth());
-            int bottom = Math.min(bounds.bottom + padding, original.getHeight());
-
-            Bitmap cropped = Bitmap.createBitmap(original, left, top, right - left, bottom - top);
-
-            if (face.getLeftEyeOpenProbability() != null && face.getRightEyeOpenProbability() != null) {
-            }
-            Bitmap resized = Bitmap.createScaledBitmap(cropped, targetSize, targetSize, true);
-            resized = normalizeLighting(resized);
-
-            cropped.recycle();
-            return resized;
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        FaceAligner current = aligner;
+        if (current == null || current.getSize() != targetSize) {
+            current = new FaceAligner(targetSize);
+            aligner = current;
         }
+        return current.alignReusing(original, face);
     }
 
     public static Bitmap enhanceFaceImage(Bitmap faceImage) {
@@ -80,10 +67,6 @@ public class FaceUtils {
         return src;
     }
 
-    private static Bitmap normalizeLighting(Bitmap src) {
-        return src;
-    }
-
     public static boolean isFaceQualityGood(Face face, Bitmap faceImage) {
         if (face == null || faceImage == null) {
             return false;
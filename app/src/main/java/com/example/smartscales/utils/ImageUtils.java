@@ -2,7 +2,6 @@ package com.example.smartscales.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
@@ -15,43 +14,44 @@ import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
 public class ImageUtils {
+    // Буферы запасного пути переиспользуются между кадрами анализа (один поток камеры)
+    private static final ThreadLocal<GrayscaleScratch> GRAYSCALE_SCRATCH = new ThreadLocal<GrayscaleScratch>() {
+        @Override
+        protected GrayscaleScratch initialValue() {
+            return new GrayscaleScratch();
+        }
+    };
 
-    public static Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
+    /**
+     * Кадр в Bitmap, повёрнутый на rotationDegrees (ImageInfo.getRotationDegrees()),
+     * то есть в координатах лиц ML Kit
+     */
+    public static Bitmap imageProxyToBitmap(ImageProxy imageProxy, int rotationDegrees) {
         try {
-            Log.d("ImageUtils", "Конвертация ImageProxy в Bitmap");
-
             Bitmap bitmap = null;
 
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
                 bitmap = imageProxy.toBitmap();
             }
 
+            boolean reused = false;
             if (bitmap == null) {
-                ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
-                if (planes != null && planes.length > 0) {
-                    ByteBuffer buffer = planes[0].getBuffer();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-
-                    int width = imageProxy.getWidth();
-                    int height = imageProxy.getHeight();
-                    bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-
-                    for (int y = 0; y < height; y++) {
-                        for (int x = 0; x < width; x++) {
-                            int pixel = data[y * width + x] & 0xFF;
-                            bitmap.setPixel(x, y, Color.rgb(pixel, pixel, pixel));
-                        }
-                    }
-                }
+                bitmap = lumaToGrayscale(imageProxy);
+                reused = true;
             }
 
+            if (bitmap != null && rotationDegrees == 0) {
+                // Буфер запасного пути перезапишет следующий кадр — отдаём копию
+                return reused ? bitmap.copy(Bitmap.Config.ARGB_8888, false) : bitmap;
+            }
             if (bitmap != null) {
                 Matrix matrix = new Matrix();
-                matrix.postRotate(90);
+                matrix.postRotate(rotationDegrees);
                 Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0,
                         bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-                bitmap.recycle();
+                if (!reused) {
+                    bitmap.recycle();
+                }
                 return rotated;
             }
 
@@ -63,6 +63,49 @@ public class ImageUtils {
         }
     }
 
+    /**
+     * Яркость (плоскость Y) в серый ARGB: один проход по строкам с учётом rowStride
+     * и pixelStride и один setPixels. Массив и Bitmap переиспользуются, пока не сменится
+     * размер кадра; результат действителен до следующего вызова в этом потоке
+     */
+    private static Bitmap lumaToGrayscale(ImageProxy imageProxy) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (planes == null || planes.length == 0) {
+            return null;
+        }
+        ByteBuffer buffer = planes[0].getBuffer();
+        int rowStride = planes[0].getRowStride();
+        int pixelStride = planes[0].getPixelStride();
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+
+        GrayscaleScratch scratch = GRAYSCALE_SCRATCH.get();
+        int[] pixels = scratch.pixels(width, height);
+        for (int y = 0, out = 0; y < height; y++) {
+            int row = y * rowStride;
+            for (int x = 0; x < width; x++, out++) {
+                int luma = buffer.get(row + x * pixelStride) & 0xFF;
+                pixels[out] = 0xFF000000 | (luma << 16) | (luma << 8) | luma;
+            }
+        }
+        Bitmap bitmap = scratch.bitmap;
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+
+    private static final class GrayscaleScratch {
+        int[] pixels = new int[0];
+        Bitmap bitmap;
+
+        int[] pixels(int width, int height) {
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                pixels = new int[width * height];
+            }
+            return pixels;
+        }
+    }
+
     public static Bitmap cropAndResizeFace(Bitmap original, android.graphics.Rect faceRect, int targetSize) {
         try {
             int padding = (int) (faceRect.width() * 0.2f);
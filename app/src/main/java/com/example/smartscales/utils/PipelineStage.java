@@ -0,0 +1,205 @@
+package com.example.smartscales.utils;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Стадия конвейера: ограниченная очередь и свой поток.
+ *
+ * Если стадия не успевает, при переполнении выбрасывается самый старый элемент —
+ * устаревший кадр бесполезнее свежего; выброшенный отдаётся DropListener,
+ * чтобы освободить ресурсы (например, кадр камеры). Стадия считает глубину очереди,
+ * выбросы, ошибки и задержки: ожидание в очереди и обработку.
+ */
+public class PipelineStage<T> {
+    private static final String TAG = "PipelineStage";
+    private static final float LATENCY_SMOOTHING = 0.1f; // Вес нового замера в скользящем среднем
+
+    public interface Handler<T> {
+        void process(T item) throws Exception;
+    }
+
+    public interface DropListener<T> {
+        void onDropped(T item);
+    }
+
+    private final String name;
+    private final int capacity;
+    private final Handler<T> handler;
+    private final DropListener<T> dropListener;
+    private final ExecutorService executor;
+    private final ArrayDeque<Entry<T>> queue;
+
+    // Состояние очереди и метрики — под this
+    private boolean draining;
+    private boolean closed;
+    private long processed;
+    private long dropped;
+    private long failed;
+    private float averageWaitMs;
+    private float averageProcessMs;
+    private float maxProcessMs;
+
+    public PipelineStage(String name, int capacity, Handler<T> handler, DropListener<T> dropListener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.handler = handler;
+        this.dropListener = dropListener;
+        this.queue = new ArrayDeque<>(capacity);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Pipeline-" + name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Ставит элемент в очередь; при переполнении выбрасывает самый старый
+     */
+    public void submit(T item) {
+        T evicted = null;
+        boolean rejected = false;
+        synchronized (this) {
+            if (closed) {
+                rejected = true;
+            } else {
+                if (queue.size() >= capacity) {
+                    evicted = queue.pollFirst().item;
+                    dropped++;
+                }
+                queue.addLast(new Entry<>(item, System.nanoTime()));
+                if (!draining) {
+                    draining = true;
+                    try {
+                        executor.execute(this::drain);
+                    } catch (RejectedExecutionException e) {
+                        draining = false;
+                    }
+                }
+            }
+        }
+        if (evicted != null) {
+            notifyDropped(evicted);
+        }
+        if (rejected) {
+            notifyDropped(item);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry<T> entry;
+            synchronized (this) {
+                entry = queue.pollFirst();
+                if (entry == null) {
+                    draining = false;
+                    return;
+                }
+            }
+
+            long start = System.nanoTime();
+            boolean ok = true;
+            try {
+                handler.process(entry.item);
+            } catch (Exception e) {
+                ok = false;
+                Log.e(TAG, name + ": ошибка обработки: " + e.getMessage(), e);
+            }
+            long end = System.nanoTime();
+            record((start - entry.enqueuedAt) / 1e6f, (end - start) / 1e6f, ok);
+        }
+    }
+
+    private synchronized void record(float waitMs, float processMs, boolean ok) {
+        if (ok) {
+            processed++;
+        } else {
+            failed++;
+        }
+        boolean first = processed + failed == 1;
+        averageWaitMs = first ? waitMs : averageWaitMs + (waitMs - averageWaitMs) * LATENCY_SMOOTHING;
+        averageProcessMs = first ? processMs : averageProcessMs + (processMs - averageProcessMs) * LATENCY_SMOOTHING;
+        maxProcessMs = Math.max(maxProcessMs, processMs);
+    }
+
+    private void notifyDropped(T item) {
+        if (dropListener != null) {
+            dropListener.onDropped(item);
+        }
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(name, queue.size(), capacity, processed, dropped, failed,
+                averageWaitMs, averageProcessMs, maxProcessMs);
+    }
+
+    /**
+     * Останавливает поток; элементы из очереди отдаются DropListener
+     */
+    public void shutdown() {
+        ArrayDeque<Entry<T>> remaining;
+        synchronized (this) {
+            closed = true;
+            remaining = new ArrayDeque<>(queue);
+            queue.clear();
+        }
+        for (Entry<T> entry : remaining) {
+            notifyDropped(entry.item);
+        }
+        executor.shutdown();
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        final long enqueuedAt;
+
+        Entry(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Снимок метрик стадии
+     */
+    public static final class Metrics {
+        public final String name;
+        public final int queueDepth;
+        public final int capacity;
+        public final long processed;
+        public final long dropped;
+        public final long failed;
+        public final float averageWaitMs;    // Ожидание в очереди, скользящее среднее
+        public final float averageProcessMs; // Обработка, скользящее среднее
+        public final float maxProcessMs;
+
+        Metrics(String name, int queueDepth, int capacity, long processed, long dropped, long failed,
+                float averageWaitMs, float averageProcessMs, float maxProcessMs) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.capacity = capacity;
+            this.processed = processed;
+            this.dropped = dropped;
+            this.failed = failed;
+            this.averageWaitMs = averageWaitMs;
+            this.averageProcessMs = averageProcessMs;
+            this.maxProcessMs = maxProcessMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: queue %d/%d, done %d, dropped %d, failed %d, " +
+                            "wait %.1f ms, process %.1f ms (max %.1f)",
+                    name, queueDepth, capacity, processed, dropped, failed,
+                    averageWaitMs, averageProcessMs, maxProcessMs);
+        }
+    }
+}
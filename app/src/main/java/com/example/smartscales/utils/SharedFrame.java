@@ -0,0 +1,137 @@
+package com.example.smartscales.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import androidx.annotation.OptIn;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageProxy;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Кадр камеры со счётчиком ссылок: детекция ML Kit и вырезание лиц работают
+ * с одним и тем же буфером ImageProxy, без копии кадра. Кадр закрывается, когда
+ * его отпустил последний владелец; до этого CameraX не выдаёт следующий.
+ *
+ * Координаты областей — в повёрнутом на rotationDegrees кадре, как у лиц ML Kit.
+ */
+public final class SharedFrame {
+    private final ImageProxy image;
+    private final int rotationDegrees;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private Bitmap fullFrame; // Только для форматов, которые нельзя читать из плоскостей
+
+    /**
+     * Создатель владеет первой ссылкой
+     */
+    public SharedFrame(ImageProxy image) {
+        this.image = image;
+        this.rotationDegrees = image.getImageInfo().getRotationDegrees();
+    }
+
+    public SharedFrame retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("Frame already released");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            synchronized (this) {
+                fullFrame = null;
+            }
+            image.close();
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released more times than retained");
+        }
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public int getWidth() {
+        return isSwapped() ? image.getHeight() : image.getWidth();
+    }
+
+    public int getHeight() {
+        return isSwapped() ? image.getWidth() : image.getHeight();
+    }
+
+    /**
+     * Вход ML Kit поверх того же буфера, без копирования
+     */
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    public InputImage toInputImage() {
+        return InputImage.fromMediaImage(image.getImage(), rotationDegrees);
+    }
+
+    /**
+     * Область кадра в новом Bitmap; выходящая за кадр часть обрезается
+     */
+    public Bitmap cropRegion(Rect region) {
+        Rect clipped = new Rect(region);
+        if (!clipped.intersect(0, 0, getWidth(), getHeight())) {
+            return null;
+        }
+        if (YuvConverter.isSupported(image)) {
+            return YuvConverter.extractRegion(image, rotationDegrees, clipped);
+        }
+        Bitmap frame = getFullFrame();
+        if (frame == null) {
+            return null;
+        }
+        clipped.intersect(0, 0, frame.getWidth(), frame.getHeight());
+        return Bitmap.createBitmap(frame, clipped.left, clipped.top, clipped.width(), clipped.height());
+    }
+
+    /**
+     * Область кадра, масштабированная в output (изменяемый, обычно из BitmapPool) без
+     * нового Bitmap. Выходящая за кадр часть — чёрная, а не обрезанная: пропорции лица сохраняются
+     * @return false, если область целиком вне кадра
+     */
+    public boolean cropRegion(Rect region, Bitmap output) {
+        if (!Rect.intersects(region, new Rect(0, 0, getWidth(), getHeight()))) {
+            return false;
+        }
+        if (YuvConverter.isSupported(image)) {
+            YuvConverter.extractRegion(image, rotationDegrees, region, output);
+            return true;
+        }
+        Bitmap frame = getFullFrame();
+        if (frame == null) {
+            return false;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-region.left, -region.top);
+        matrix.postScale((float) output.getWidth() / region.width(), (float) output.getHeight() / region.height());
+        Canvas canvas = new Canvas(output);
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(frame, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return true;
+    }
+
+    /**
+     * Полный кадр для не-YUV форматов — один раз на кадр, сколько бы лиц ни вырезалось
+     */
+    private synchronized Bitmap getFullFrame() {
+        if (fullFrame == null) {
+            fullFrame = ImageUtils.imageProxyToBitmap(image, rotationDegrees);
+        }
+        return fullFrame;
+    }
+
+    private boolean isSwapped() {
+        return rotationDegrees == 90 || rotationDegrees == 270;
+    }
+}
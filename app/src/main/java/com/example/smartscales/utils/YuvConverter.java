@@ -0,0 +1,203 @@
+package com.example.smartscales.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Чтение кадров YUV_420_888 напрямую из плоскостей, без NV21 и JPEG.
+ *
+ * Учитываются rowStride и pixelStride каждой плоскости, так что кадры с выравниванием
+ * строк и с чередующимися U/V (pixelStride 2) читаются верно. Область лица вырезается
+ * сразу в правильной ориентации: для каждого пикселя выхода точка сенсора находится
+ * аффинным преобразованием, яркость — билинейно, цвет — по ближайшему отсчёту.
+ * Полный кадр в Bitmap для этого не нужен; область можно сразу масштабировать
+ * в переиспользуемый Bitmap фиксированного размера.
+ */
+public class YuvConverter {
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private YuvConverter() {
+    }
+
+    public static boolean isSupported(ImageProxy image) {
+        return image.getFormat() == ImageFormat.YUV_420_888 && image.getPlanes().length >= 3;
+    }
+
+    /**
+     * Прямоугольник повёрнутого кадра (например, рамка лица с запасом) в Bitmap его размера,
+     * уже в правильной ориентации. Область должна лежать внутри кадра
+     */
+    public static Bitmap extractRegion(ImageProxy image, int rotationDegrees, Rect region) {
+        Bitmap output = Bitmap.createBitmap(region.width(), region.height(), Bitmap.Config.ARGB_8888);
+        extractRegion(image, rotationDegrees, region, output);
+        return output;
+    }
+
+    /**
+     * То же с масштабированием области в готовый изменяемый Bitmap (например, из BitmapPool).
+     * Часть области за пределами кадра заполняется чёрным, пропорции не искажаются
+     */
+    public static void extractRegion(ImageProxy image, int rotationDegrees, Rect region, Bitmap output) {
+        Scratch s = SCRATCH.get();
+        int outWidth = output.getWidth();
+        int outHeight = output.getHeight();
+        int[] pixels = s.pixels(outWidth * outHeight);
+        s.outputToSensor.setScale((float) region.width() / outWidth, (float) region.height() / outHeight);
+        s.outputToSensor.postTranslate(region.left, region.top);
+        setUprightToSensor(s.uprightToSensor, rotationDegrees, image.getWidth(), image.getHeight());
+        s.outputToSensor.postConcat(s.uprightToSensor);
+        warp(image, s.outputToSensor, outWidth, outHeight, pixels, s.values);
+        output.setPixels(pixels, 0, outWidth, 0, 0, outWidth, outHeight);
+    }
+
+    /**
+     * Весь кадр в ARGB (ориентация сенсора) одним проходом по строкам
+     */
+    public static Bitmap toBitmap(ImageProxy image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = SCRATCH.get().pixels(width * height);
+        toArgb(image, argb);
+        return Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public static void toArgb(ImageProxy image, int[] argb) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        for (int y = 0, out = 0; y < height; y++) {
+            int yRow = y * yRowStride;
+            int uvRow = (y >> 1) * uvRowStride;
+            for (int x = 0; x < width; x++, out++) {
+                int luma = yBuffer.get(yRow + x * yPixelStride) & 0xFF;
+                int uvIndex = uvRow + (x >> 1) * uvPixelStride;
+                argb[out] = yuvToArgb(luma, uBuffer.get(uvIndex) & 0xFF, vBuffer.get(uvIndex) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Для каждого пикселя выхода — точка сенсора по outputToSensor; вне кадра — чёрный
+     */
+    private static void warp(ImageProxy image, Matrix outputToSensor, int outWidth, int outHeight,
+                             int[] argb, float[] values) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        ByteBuffer yBuffer = planes[0].getBuffer();
+        ByteBuffer uBuffer = planes[1].getBuffer();
+        ByteBuffer vBuffer = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        outputToSensor.getValues(values);
+        float a = values[Matrix.MSCALE_X];
+        float b = values[Matrix.MSKEW_X];
+        float c = values[Matrix.MTRANS_X];
+        float d = values[Matrix.MSKEW_Y];
+        float e = values[Matrix.MSCALE_Y];
+        float f = values[Matrix.MTRANS_Y];
+
+        for (int oy = 0, out = 0; oy < outHeight; oy++) {
+            // Центры пикселей: +0.5 на входе преобразования, -0.5 на выходе
+            float centerY = oy + 0.5f;
+            float sx = a * 0.5f + b * centerY + c - 0.5f;
+            float sy = d * 0.5f + e * centerY + f - 0.5f;
+            for (int ox = 0; ox < outWidth; ox++, out++, sx += a, sy += d) {
+                if (sx < 0 || sy < 0 || sx > width - 1 || sy > height - 1) {
+                    argb[out] = 0xFF000000;
+                    continue;
+                }
+                int x0 = (int) sx;
+                int y0 = (int) sy;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int y1 = Math.min(y0 + 1, height - 1);
+                float fx = sx - x0;
+                float fy = sy - y0;
+
+                int row0 = y0 * yRowStride;
+                int row1 = y1 * yRowStride;
+                float top = (yBuffer.get(row0 + x0 * yPixelStride) & 0xFF) * (1 - fx)
+                        + (yBuffer.get(row0 + x1 * yPixelStride) & 0xFF) * fx;
+                float bottom = (yBuffer.get(row1 + x0 * yPixelStride) & 0xFF) * (1 - fx)
+                        + (yBuffer.get(row1 + x1 * yPixelStride) & 0xFF) * fx;
+                int luma = (int) (top + (bottom - top) * fy + 0.5f);
+
+                int cx = Math.min((int) (sx + 0.5f), width - 1) >> 1;
+                int chromaY = Math.min((int) (sy + 0.5f), height - 1) >> 1;
+                int uvIndex = chromaY * uvRowStride + cx * uvPixelStride;
+                argb[out] = yuvToArgb(luma, uBuffer.get(uvIndex) & 0xFF, vBuffer.get(uvIndex) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Координаты кадра, повёрнутого на rotationDegrees по часовой, → координаты сенсора width×height
+     */
+    private static void setUprightToSensor(Matrix matrix, int rotationDegrees, int width, int height) {
+        matrix.setRotate(-rotationDegrees);
+        switch (rotationDegrees) {
+            case 90:
+                matrix.postTranslate(0, height);
+                break;
+            case 180:
+                matrix.postTranslate(width, height);
+                break;
+            case 270:
+                matrix.postTranslate(width, 0);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * BT.601 full range (JFIF), как у камер Android; коэффициенты в фиксированной точке 1/1024
+     */
+    private static int yuvToArgb(int y, int u, int v) {
+        u -= 128;
+        v -= 128;
+        int r = y + ((1436 * v) >> 10);
+        int g = y - ((352 * u + 731 * v) >> 10);
+        int b = y + ((1815 * u) >> 10);
+        r = r < 0 ? 0 : Math.min(r, 255);
+        g = g < 0 ? 0 : Math.min(g, 255);
+        b = b < 0 ? 0 : Math.min(b, 255);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static final class Scratch {
+        final Matrix outputToSensor = new Matrix();
+        final Matrix uprightToSensor = new Matrix();
+        final float[] values = new float[9];
+        int[] pixels = new int[0];
+
+        int[] pixels(int length) {
+            if (pixels.length < length) {
+                pixels = new int[length];
+            }
+            return pixels;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Голосование по треку: решение по среднему и отрыву, неизвестное лицо, забывание треков
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FaceTrackVoterTest {
+    private static final float THRESHOLD = 0.6f;
+    private static final float MIN_MARGIN = 0.05f;
+    private static final int TRACK = 11;
+    private static final long FRAME_MS = 100;
+
+    private final FaceTrackVoter voter = new FaceTrackVoter(THRESHOLD, MIN_MARGIN);
+
+    @Test
+    public void clearLeaderIsDecidedAfterMinFrames() {
+        SearchResult frame = result(new int[]{7, 3}, new float[]{0.8f, 0.65f});
+
+        assertNull(vote(TRACK, frame, 0));
+        assertNull(vote(TRACK, frame, 1));
+        FaceTrackVoter.Decision decision = vote(TRACK, frame, 2);
+
+        assertNotNull(decision);
+        assertTrue(decision.isKnown());
+        assertEquals(7, decision.userId);
+        assertEquals(0.8f, decision.confidence, 1e-6f);
+        assertEquals(3, decision.frames);
+        // Решённому треку кадры больше не нужны, поздний эмбеддинг игнорируется
+        assertFalse(voter.needsFrame(TRACK, 3 * FRAME_MS));
+        assertNull(voter.addFrame(TRACK, frame, 3 * FRAME_MS));
+        assertEquals(7, voter.getDecision(TRACK).userId);
+    }
+
+    @Test
+    public void smallMarginEndsUnknownAtMaxFrames() {
+        SearchResult frame = result(new int[]{7, 3}, new float[]{0.8f, 0.78f});
+
+        for (int i = 0; i < 7; i++) {
+            assertNull("Решение на кадре " + (i + 1), vote(TRACK, frame, i));
+        }
+        FaceTrackVoter.Decision decision = vote(TRACK, frame, 7);
+
+        assertNotNull(decision);
+        assertFalse(decision.isKnown());
+        assertEquals(8, decision.frames);
+    }
+
+    @Test
+    public void leaderCollectsMarginOverFrames() {
+        // Второй кандидат пропадает из выдачи — его среднее падает, отрыв растёт
+        assertNull(vote(TRACK, result(new int[]{7, 3}, new float[]{0.8f, 0.79f}), 0));
+        assertNull(vote(TRACK, result(new int[]{7, 3}, new float[]{0.8f, 0.79f}), 1));
+        FaceTrackVoter.Decision decision = vote(TRACK, result(new int[]{7}, new float[]{0.8f}), 2);
+
+        assertNotNull(decision);
+        assertEquals(7, decision.userId);
+    }
+
+    @Test
+    public void candidatesBelowThresholdGiveUnknown() {
+        SearchResult frame = result(new int[]{7}, new float[]{0.5f});
+
+        assertNull(vote(TRACK, frame, 0));
+        assertNull(vote(TRACK, frame, 1));
+        FaceTrackVoter.Decision decision = vote(TRACK, frame, 2);
+
+        assertNotNull(decision);
+        assertEquals(FaceTrackVoter.UNKNOWN_USER, decision.userId);
+        assertEquals(0f, decision.confidence, 0f);
+    }
+
+    @Test
+    public void staleTrackIsForgotten() {
+        SearchResult frame = result(new int[]{7}, new float[]{0.8f});
+        assertNull(vote(TRACK, frame, 0));
+        assertNull(vote(TRACK, frame, 1));
+
+        // Другой трек через 3+ секунды вытесняет забытый
+        long later = FRAME_MS + 3001;
+        assertTrue(voter.needsFrame(TRACK + 1, later));
+        assertNull(voter.addFrame(TRACK, frame, later));
+
+        // Вернувшийся трек голосует с нуля
+        assertNull(vote(TRACK, frame, 100));
+        assertNull(vote(TRACK, frame, 101));
+        assertNotNull(vote(TRACK, frame, 102));
+    }
+
+    @Test
+    public void resetStartsVotingAgain() {
+        SearchResult frame = result(new int[]{7}, new float[]{0.8f});
+        for (int i = 0; i < 3; i++) {
+            vote(TRACK, frame, i);
+        }
+        assertNotNull(voter.getDecision(TRACK));
+
+        voter.reset(TRACK);
+        assertNull(voter.getDecision(TRACK));
+        assertTrue(voter.needsFrame(TRACK, 3 * FRAME_MS));
+    }
+
+    /**
+     * Кадр трека, как его видит конвейер: needsFrame, затем addFrame
+     */
+    private FaceTrackVoter.Decision vote(int trackingId, SearchResult candidates, int frame) {
+        long now = frame * FRAME_MS;
+        assertTrue(voter.needsFrame(trackingId, now));
+        return voter.addFrame(trackingId, candidates, now);
+    }
+
+    private static SearchResult result(int[] userIds, float[] similarities) {
+        return new SearchResult(userIds, similarities);
+    }
+}
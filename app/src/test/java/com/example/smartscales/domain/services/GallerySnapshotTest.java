@@ -0,0 +1,181 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery;
+import com.example.smartscales.domain.interfaces.EmbeddingGallery.Rows;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Снимок галереи: строки возвращаются без изменений, повреждённые данные отвергаются по CRC
+ */
+public class GallerySnapshotTest {
+    private static final int DIMENSION = 16;
+    private static final int HEADER_SIZE = 28;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("gallery", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void saveAndLoadKeepRows() throws IOException {
+        Rows rows = randomRows(new Random(1), 100);
+        GallerySnapshot.save(file, rows, 42);
+
+        RecordingGallery target = new RecordingGallery(DIMENSION);
+        assertEquals(42, GallerySnapshot.load(file, target));
+        assertEquals(1, target.loads);
+        assertArrayEquals(rows.userIds, target.rows.userIds);
+        assertArrayEquals(rows.vectors, target.rows.vectors, 0f);
+    }
+
+    @Test
+    public void emptyGalleryRoundTrip() throws IOException {
+        GallerySnapshot.save(file, new Rows(DIMENSION, new int[0], new float[0]), 7);
+
+        RecordingGallery target = new RecordingGallery(DIMENSION);
+        assertEquals(7, GallerySnapshot.load(file, target));
+        assertEquals(0, target.rows.size());
+    }
+
+    @Test
+    public void corruptedPayloadFailsChecksum() throws IOException {
+        GallerySnapshot.save(file, randomRows(new Random(2), 50), 3);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long position = HEADER_SIZE + 50 * 4 + 5;
+            out.seek(position);
+            int value = out.read();
+            out.seek(position);
+            out.write(value ^ 0x10);
+        }
+
+        RecordingGallery target = new RecordingGallery(DIMENSION);
+        IOException error = assertThrows(IOException.class, () -> GallerySnapshot.load(file, target));
+        assertTrue(error.getMessage(), error.getMessage().contains("checksum"));
+        assertNull(target.rows);
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        GallerySnapshot.save(file, randomRows(new Random(3), 50), 3);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 4);
+        }
+
+        RecordingGallery target = new RecordingGallery(DIMENSION);
+        assertThrows(IOException.class, () -> GallerySnapshot.load(file, target));
+        assertNull(target.rows);
+    }
+
+    @Test
+    public void otherDimensionIsIgnored() throws IOException {
+        GallerySnapshot.save(file, randomRows(new Random(4), 10), 5);
+
+        RecordingGallery target = new RecordingGallery(DIMENSION * 2);
+        assertEquals(-1, GallerySnapshot.load(file, target));
+        assertNull(target.rows);
+    }
+
+    @Test
+    public void missingFileIsIgnored() throws IOException {
+        file.delete();
+        assertEquals(-1, GallerySnapshot.load(file, new RecordingGallery(DIMENSION)));
+    }
+
+    private static Rows randomRows(Random random, int count) {
+        int[] ids = new int[count];
+        float[] vectors = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            ids[row] = random.nextInt(100000);
+            for (int i = 0; i < DIMENSION; i++) {
+                vectors[row * DIMENSION + i] = (float) random.nextGaussian();
+            }
+        }
+        return new Rows(DIMENSION, ids, vectors);
+    }
+
+    /**
+     * Галерея, которая только запоминает строки, переданные в loadRows
+     */
+    private static final class RecordingGallery implements EmbeddingGallery {
+        private final int dimension;
+        Rows rows;
+        int loads;
+
+        RecordingGallery(int dimension) {
+            this.dimension = dimension;
+        }
+
+        @Override
+        public void loadRows(Rows rows) {
+            this.rows = rows;
+            loads++;
+        }
+
+        @Override
+        public int getDimension() {
+            return dimension;
+        }
+
+        @Override
+        public int size() {
+            return rows != null ? rows.size() : 0;
+        }
+
+        @Override
+        public void put(int userId, float[] embedding) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            rows = null;
+        }
+
+        @Override
+        public boolean contains(int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int[] getUserIds() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Rows exportRows() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SearchResult searchNearest(float[] query, int k) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+
+import androidx.lifecycle.LiveData;
+
+import com.example.smartscales.data.database.dao.UserDao;
+import com.example.smartscales.data.models.User;
+import com.example.smartscales.data.models.UserEmbeddingChange;
+import com.example.smartscales.utils.EmbeddingCodec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Применение дельты по версиям и сверка жёстких удалений на таблице в памяти вместо Room
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GallerySynchronizerTest {
+    private static final int DIMENSION = 8;
+
+    private FakeUserDao dao;
+    private FaceEmbeddingStore gallery;
+    private GallerySynchronizer synchronizer;
+
+    @Before
+    public void setUp() {
+        dao = new FakeUserDao();
+        gallery = new FaceEmbeddingStore(DIMENSION);
+        synchronizer = new GallerySynchronizer(gallery, dao);
+    }
+
+    @Test
+    public void deltaAddsAndUpdatesOnlyNewVersions() {
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), true);
+        dao.upsert(2, EmbeddingCodec.encodeInt8(unit(1)), true);
+
+        long version = synchronizer.applyChanges(gallery, 0);
+        assertEquals(2, version);
+        assertArrayEquals(new int[]{1, 2}, sortedIds());
+
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(2)), true);
+        version = synchronizer.applyChanges(gallery, version);
+        assertEquals(3, version);
+        assertEquals(1, gallery.searchNearest(unit(2), 1).getUserId(0));
+
+        // Повторный вызов с той же версией ничего не читает
+        assertEquals(version, synchronizer.applyChanges(gallery, version));
+        assertEquals(2, gallery.size());
+    }
+
+    @Test
+    public void deactivatedAndForeignDimensionRowsAreRemoved() {
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), true);
+        dao.upsert(2, EmbeddingCodec.encodeFloat(unit(1)), true);
+        long version = synchronizer.applyChanges(gallery, 0);
+
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), false);
+        dao.upsert(2, EmbeddingCodec.encodeFloat(new float[DIMENSION * 2]), true);
+        synchronizer.applyChanges(gallery, version);
+
+        assertEquals(0, gallery.size());
+    }
+
+    @Test
+    public void hardDeleteIsFoundByReconciliation() {
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), true);
+        dao.upsert(2, EmbeddingCodec.encodeFloat(unit(1)), true);
+        dao.upsert(3, EmbeddingCodec.encodeFloat(unit(2)), true);
+        long version = synchronizer.applyChanges(gallery, 0);
+
+        // DELETE версию не оставляет: дельта пуста, сверка принудительная
+        dao.hardDelete(2);
+        assertEquals(version, synchronizer.applyChanges(gallery, version));
+        assertEquals(1, synchronizer.removeDeletedUsers(gallery, true));
+        assertArrayEquals(new int[]{1, 3}, sortedIds());
+        assertFalse(gallery.contains(2));
+    }
+
+    @Test
+    public void reconciliationSkippedWhenCountsMatch() {
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), true);
+        dao.upsert(2, EmbeddingCodec.encodeFloat(unit(1)), true);
+        synchronizer.applyChanges(gallery, 0);
+
+        assertEquals(0, synchronizer.removeDeletedUsers(gallery, false));
+        assertEquals(0, dao.idQueries);
+    }
+
+    @Test
+    public void foreignDimensionRowsDoNotMaskDeletes() {
+        dao.upsert(1, EmbeddingCodec.encodeFloat(unit(0)), true);
+        dao.upsert(2, EmbeddingCodec.encodeFloat(unit(1)), true);
+        synchronizer.applyChanges(gallery, 0);
+
+        // Строка другой модели в галерею не попадает и не должна уравнивать счётчики
+        dao.hardDelete(2);
+        dao.upsert(3, EmbeddingCodec.encodeFloat(new float[DIMENSION * 2]), true);
+
+        assertEquals(1, synchronizer.removeDeletedUsers(gallery, false));
+        assertTrue(gallery.contains(1));
+        assertFalse(gallery.contains(2));
+    }
+
+    private int[] sortedIds() {
+        int[] ids = gallery.getUserIds();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static float[] unit(int axis) {
+        float[] v = new float[DIMENSION];
+        v[axis] = 1f;
+        return v;
+    }
+
+    /**
+     * Таблица users в памяти: каждая запись поднимает version, как триггер в AppDatabase
+     */
+    private static final class FakeUserDao implements UserDao {
+        private final Map<Integer, UserEmbeddingChange> rows = new LinkedHashMap<>();
+        private long version;
+        int idQueries;
+
+        void upsert(int id, byte[] embedding, boolean active) {
+            UserEmbeddingChange row = new UserEmbeddingChange();
+            row.id = id;
+            row.faceEmbedding = embedding;
+            row.isActive = active;
+            row.version = ++version;
+            rows.put(id, row);
+        }
+
+        void hardDelete(int id) {
+            rows.remove(id);
+        }
+
+        @Override
+        public List<UserEmbeddingChange> getEmbeddingChangesSince(long sinceVersion) {
+            List<UserEmbeddingChange> changes = new ArrayList<>();
+            for (UserEmbeddingChange row : rows.values()) {
+                if (row.version > sinceVersion) {
+                    changes.add(row);
+                }
+            }
+            changes.sort((a, b) -> Long.compare(a.version, b.version));
+            return changes;
+        }
+
+        @Override
+        public List<Integer> getActiveEmbeddingUserIds() {
+            idQueries++;
+            List<Integer> ids = new ArrayList<>();
+            for (UserEmbeddingChange row : rows.values()) {
+                if (row.isActive && row.faceEmbedding != null) {
+                    ids.add(row.id);
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public int getActiveEmbeddingCount(int floatLength, int int8Length) {
+            int count = 0;
+            for (UserEmbeddingChange row : rows.values()) {
+                if (row.isActive && row.faceEmbedding != null
+                        && (row.faceEmbedding.length == floatLength || row.faceEmbedding.length == int8Length)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long insert(User user) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void update(User user) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(User user) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LiveData<List<User>> getAllActiveUsers() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User getUserById(int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User getUserByName(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deactivateUser(int userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getActiveUsersCount() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User findUserByName(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LiveData<User> getUserByIdLive(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<byte[]> getActiveFaceEmbeddings() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor getActiveEmbeddingsCursor() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
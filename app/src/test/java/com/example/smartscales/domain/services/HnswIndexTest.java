@@ -0,0 +1,146 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Полнота HNSW и отбор TopKCollector против точного перебора на случайных нормализованных векторах
+ */
+public class HnswIndexTest {
+    private static final int DIMENSION = 32;
+    private static final int COUNT = 2000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int MAX_LINKS = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final float MIN_RECALL = 0.9f;
+
+    @Test
+    public void topKCollectorMatchesFullSort() {
+        Random random = new Random(1);
+        float[] scores = new float[500];
+        TopKCollector collector = new TopKCollector(K);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+            collector.offer(i, scores[i]);
+        }
+
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        SearchResult result = collector.toResult(1f);
+        assertEquals(K, result.size());
+        for (int rank = 0; rank < K; rank++) {
+            assertEquals(sorted[sorted.length - 1 - rank], result.getSimilarity(rank), 0f);
+            assertEquals(scores[result.getUserId(rank)], result.getSimilarity(rank), 0f);
+        }
+    }
+
+    @Test
+    public void recallAgainstExactScan() {
+        Random random = new Random(2);
+        float[] vectors = randomVectors(random, COUNT);
+        HnswIndex index = new HnswIndex(DIMENSION, MAX_LINKS, EF_CONSTRUCTION, EF_SEARCH);
+        for (int id = 0; id < COUNT; id++) {
+            index.add(id, vectors, id * DIMENSION);
+        }
+
+        assertEquals(COUNT, index.size());
+        assertRecall(index, vectors, random);
+    }
+
+    @Test
+    public void recallSurvivesReplacements() {
+        Random random = new Random(3);
+        float[] vectors = randomVectors(random, COUNT);
+        HnswIndex index = new HnswIndex(DIMENSION, MAX_LINKS, EF_CONSTRUCTION, EF_SEARCH);
+        for (int id = 0; id < COUNT; id++) {
+            index.add(id, vectors, id * DIMENSION);
+        }
+        // Повторная регистрация всех пользователей: без перестроения половина графа — удалённые узлы
+        float[] updated = randomVectors(random, COUNT);
+        for (int id = 0; id < COUNT; id++) {
+            index.add(id, updated, id * DIMENSION);
+        }
+
+        assertEquals(COUNT, index.size());
+        assertRecall(index, updated, random);
+    }
+
+    @Test
+    public void quantizedRecallAgainstExactScan() {
+        Random random = new Random(4);
+        float[] vectors = randomVectors(random, COUNT);
+        HnswIndex index = new HnswIndex(DIMENSION, MAX_LINKS, EF_CONSTRUCTION, EF_SEARCH, true);
+        for (int id = 0; id < COUNT; id++) {
+            index.add(id, vectors, id * DIMENSION);
+        }
+
+        assertEquals(COUNT, index.size());
+        assertRecall(index, vectors, random);
+    }
+
+    private static void assertRecall(HnswIndex index, float[] vectors, Random random) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVectors(random, 1);
+            Set<Integer> expected = exactTopK(vectors, query);
+            SearchResult result = index.search(query, K, 1f);
+            assertEquals(K, result.size());
+            Set<Integer> seen = new HashSet<>();
+            for (int rank = 0; rank < result.size(); rank++) {
+                int userId = result.getUserId(rank);
+                assertTrue("Пользователь " + userId + " в выдаче дважды", seen.add(userId));
+                if (expected.contains(userId)) {
+                    found++;
+                }
+            }
+        }
+        float recall = (float) found / (QUERIES * K);
+        assertTrue("recall@" + K + " = " + recall, recall >= MIN_RECALL);
+    }
+
+    private static Set<Integer> exactTopK(float[] vectors, float[] query) {
+        TopKCollector collector = new TopKCollector(K);
+        for (int id = 0; id < vectors.length / DIMENSION; id++) {
+            float dot = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                dot += query[i] * vectors[id * DIMENSION + i];
+            }
+            collector.offer(id, dot);
+        }
+        SearchResult result = collector.toResult(1f);
+        Set<Integer> ids = new HashSet<>();
+        for (int rank = 0; rank < result.size(); rank++) {
+            ids.add(result.getUserId(rank));
+        }
+        return ids;
+    }
+
+    private static float[] randomVectors(Random random, int count) {
+        float[] vectors = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            int offset = row * DIMENSION;
+            float sum = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                float v = (float) random.nextGaussian();
+                vectors[offset + i] = v;
+                sum += v * v;
+            }
+            float norm = (float) Math.sqrt(sum);
+            for (int i = 0; i < DIMENSION; i++) {
+                vectors[offset + i] /= norm;
+            }
+        }
+        return vectors;
+    }
+}
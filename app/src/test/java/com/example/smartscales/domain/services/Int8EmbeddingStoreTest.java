@@ -0,0 +1,123 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * int8-галерея: перенос последней строки при удалении, замена, поиск полным проходом и по HNSW
+ */
+@RunWith(RobolectricTestRunner.class)
+public class Int8EmbeddingStoreTest {
+    private static final int DIMENSION = 64;
+    private static final int RESCORE_DEPTH = 16;
+    private static final float SELF_SIMILARITY = 0.98f; // Ошибка квантования галереи
+
+    @Test
+    public void searchFindsOwnEmbedding() {
+        Random random = new Random(1);
+        Int8EmbeddingStore store = new Int8EmbeddingStore(DIMENSION, RESCORE_DEPTH);
+        float[][] vectors = fill(store, random, 50);
+
+        for (int id = 0; id < vectors.length; id++) {
+            SearchResult result = store.searchNearest(vectors[id], 2);
+            assertEquals(id, result.getUserId(0));
+            assertTrue(result.getSimilarity(0) >= SELF_SIMILARITY);
+            assertTrue(result.getSimilarity(0) >= result.getSimilarity(1));
+        }
+    }
+
+    @Test
+    public void removeMovesLastRowIntoGap() {
+        Random random = new Random(2);
+        Int8EmbeddingStore store = new Int8EmbeddingStore(DIMENSION, RESCORE_DEPTH);
+        float[][] vectors = fill(store, random, 5);
+
+        assertTrue(store.remove(1));
+        assertFalse(store.remove(1));
+
+        assertEquals(4, store.size());
+        assertFalse(store.contains(1));
+        int[] ids = store.getUserIds();
+        Arrays.sort(ids);
+        assertArrayEquals(new int[]{0, 2, 3, 4}, ids);
+        // Строка последнего пользователя переехала на место удалённой вместе с масштабом
+        for (int id : ids) {
+            assertEquals(id, store.searchNearest(vectors[id], 1).getUserId(0));
+        }
+    }
+
+    @Test
+    public void putReplacesExistingUser() {
+        Random random = new Random(3);
+        Int8EmbeddingStore store = new Int8EmbeddingStore(DIMENSION, RESCORE_DEPTH);
+        fill(store, random, 10);
+
+        float[] updated = randomVector(random);
+        store.put(4, updated);
+
+        assertEquals(10, store.size());
+        SearchResult result = store.searchNearest(updated, 1);
+        assertEquals(4, result.getUserId(0));
+        assertTrue(result.getSimilarity(0) >= SELF_SIMILARITY);
+    }
+
+    @Test
+    public void indexTakesOverAtThreshold() {
+        Random random = new Random(4);
+        Int8EmbeddingStore store = new Int8EmbeddingStore(DIMENSION, RESCORE_DEPTH);
+        store.setIndexParameters(100, 64);
+        float[][] vectors = fill(store, random, 300);
+
+        store.remove(7);
+        for (int id = 0; id < vectors.length; id++) {
+            SearchResult result = store.searchNearest(vectors[id], 3);
+            assertEquals(3, result.size());
+            for (int rank = 0; rank < result.size(); rank++) {
+                assertTrue("Удалённый пользователь в выдаче", result.getUserId(rank) != 7);
+            }
+            if (id != 7) {
+                assertEquals(id, result.getUserId(0));
+            }
+        }
+    }
+
+    @Test
+    public void emptyStoreAndZeroQuery() {
+        Int8EmbeddingStore store = new Int8EmbeddingStore(DIMENSION, RESCORE_DEPTH);
+        assertTrue(store.searchNearest(randomVector(new Random(5)), 3).isEmpty());
+
+        fill(store, new Random(6), 3);
+        assertTrue(store.searchNearest(new float[DIMENSION], 3).isEmpty());
+        store.clear();
+        assertEquals(0, store.size());
+        assertTrue(store.searchNearest(randomVector(new Random(7)), 3).isEmpty());
+    }
+
+    private static float[][] fill(Int8EmbeddingStore store, Random random, int count) {
+        float[][] vectors = new float[count][];
+        for (int id = 0; id < count; id++) {
+            vectors[id] = randomVector(random);
+            store.put(id, vectors[id]);
+        }
+        return vectors;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
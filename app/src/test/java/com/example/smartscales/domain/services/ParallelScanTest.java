@@ -0,0 +1,97 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Разбиение на куски и слияние TopKCollector дают тот же результат, что и проход в одном потоке
+ */
+public class ParallelScanTest {
+    private static final int K = 16;
+
+    @Test
+    public void parallelScanMatchesSerialScan() {
+        int rows = ParallelScan.MIN_PARALLEL_ROWS * 8;
+        float[] scores = randomScores(rows, 1);
+        List<int[]> ranges = Collections.synchronizedList(new ArrayList<>());
+
+        SearchResult parallel = ParallelScan.scan(rows, K, (from, to, out) -> {
+            ranges.add(new int[]{from, to});
+            offerRange(scores, from, to, out);
+        }, 4).toResult(1f);
+        SearchResult serial = ParallelScan.scan(rows, K,
+                (from, to, out) -> offerRange(scores, from, to, out), 1).toResult(1f);
+
+        assertTrue("Проход не разбит на куски: " + ranges.size(), ranges.size() > 1);
+        assertCovers(ranges, rows);
+        assertEquals(K, parallel.size());
+        for (int rank = 0; rank < K; rank++) {
+            assertEquals(serial.getUserId(rank), parallel.getUserId(rank));
+            assertEquals(serial.getSimilarity(rank), parallel.getSimilarity(rank), 0f);
+        }
+    }
+
+    @Test
+    public void smallGalleryIsScannedInOneRange() {
+        int rows = ParallelScan.MIN_PARALLEL_ROWS - 1;
+        float[] scores = randomScores(rows, 2);
+        List<int[]> ranges = Collections.synchronizedList(new ArrayList<>());
+
+        SearchResult result = ParallelScan.scan(rows, K, (from, to, out) -> {
+            ranges.add(new int[]{from, to});
+            offerRange(scores, from, to, out);
+        }, 4).toResult(1f);
+
+        assertEquals(1, ranges.size());
+        assertEquals(K, result.size());
+    }
+
+    @Test
+    public void fewerRowsThanK() {
+        float[] scores = randomScores(3, 3);
+        SearchResult result = ParallelScan.scan(3, K,
+                (from, to, out) -> offerRange(scores, from, to, out), 4).toResult(1f);
+        assertEquals(3, result.size());
+    }
+
+    private static void offerRange(float[] scores, int from, int to, TopKCollector out) {
+        for (int row = from; row < to; row++) {
+            if (scores[row] > out.threshold()) {
+                out.offer(row, scores[row]);
+            }
+        }
+    }
+
+    /**
+     * Куски покрывают [0, rows) без пропусков и пересечений
+     */
+    private static void assertCovers(List<int[]> ranges, int rows) {
+        List<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int next = 0;
+        for (int[] range : sorted) {
+            assertEquals(next, range[0]);
+            assertTrue(range[1] - range[0] >= ParallelScan.MIN_CHUNK_ROWS / 2);
+            next = range[1];
+        }
+        assertEquals(rows, next);
+    }
+
+    private static float[] randomScores(int rows, long seed) {
+        Random random = new Random(seed);
+        float[] scores = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            scores[i] = random.nextFloat();
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.smartscales.domain.interfaces.EmbeddingGallery.Rows;
+import com.example.smartscales.domain.interfaces.FaceRecognitionInterface.SearchResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * PQ-галерея: перенос последней строки при удалении, замена и поиск по таблице расстояний
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PqEmbeddingStoreTest {
+    private static final int DIMENSION = 32;
+    private static final int SUBSPACES = 8;
+    private static final int COUNT = 300;
+
+    private List<float[]> vectors;
+    private PqEmbeddingStore store;
+
+    @Before
+    public void setUp() {
+        vectors = ProductQuantizerTest.randomVectors(new Random(1), COUNT);
+        store = new PqEmbeddingStore(ProductQuantizer.train(vectors, DIMENSION, SUBSPACES));
+        for (int id = 0; id < COUNT; id++) {
+            store.put(id, vectors.get(id));
+        }
+    }
+
+    @Test
+    public void searchFindsOwnEmbedding() {
+        for (int id = 0; id < COUNT; id++) {
+            SearchResult result = store.searchNearest(vectors.get(id), 3);
+            assertEquals(3, result.size());
+            assertEquals(id, result.getUserId(0));
+            assertTrue(result.getSimilarity(0) >= result.getSimilarity(1));
+        }
+    }
+
+    @Test
+    public void removeMovesLastRowIntoGap() {
+        int last = COUNT - 1;
+        SearchResult before = store.searchNearest(vectors.get(last), 1);
+
+        assertTrue(store.remove(10));
+        assertFalse(store.remove(10));
+
+        assertEquals(COUNT - 1, store.size());
+        assertFalse(store.contains(10));
+        SearchResult after = store.searchNearest(vectors.get(last), 1);
+        assertEquals(last, after.getUserId(0));
+        assertEquals(before.getSimilarity(0), after.getSimilarity(0), 0f);
+        for (int id = 0; id < COUNT; id++) {
+            assertTrue(store.searchNearest(vectors.get(id), 1).getUserId(0) != 10);
+        }
+    }
+
+    @Test
+    public void putReplacesExistingUser() {
+        store.put(5, vectors.get(6));
+        assertEquals(COUNT, store.size());
+        SearchResult result = store.searchNearest(vectors.get(6), 2);
+        assertEquals(result.getSimilarity(0), result.getSimilarity(1), 0f);
+    }
+
+    @Test
+    public void exportedRowsReloadIntoPqStore() {
+        Rows rows = store.exportRows();
+        assertEquals(COUNT, rows.size());
+
+        PqEmbeddingStore restored = new PqEmbeddingStore(ProductQuantizer.train(vectors, DIMENSION, SUBSPACES));
+        restored.loadRows(rows);
+        int[] ids = restored.getUserIds();
+        Arrays.sort(ids);
+        int[] expected = store.getUserIds();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, ids);
+
+        int same = 0;
+        for (int id = 0; id < COUNT; id++) {
+            SearchResult original = store.searchNearest(vectors.get(id), 1);
+            SearchResult reloaded = restored.searchNearest(vectors.get(id), 1);
+            if (original.getUserId(0) == reloaded.getUserId(0)) {
+                same++;
+            }
+        }
+        assertTrue("Совпало " + same + " из " + COUNT, same >= COUNT * 0.95f);
+    }
+}
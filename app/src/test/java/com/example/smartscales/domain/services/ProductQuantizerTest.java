@@ -0,0 +1,143 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Кодбук PQ: сохранение и загрузка дают те же коды, повреждённый файл отвергается
+ */
+public class ProductQuantizerTest {
+    private static final int DIMENSION = 32;
+    private static final int SUBSPACES = 8;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("codebook", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void saveAndLoadKeepCodebook() throws IOException {
+        List<float[]> vectors = randomVectors(new Random(1), 300);
+        ProductQuantizer trained = ProductQuantizer.train(vectors, DIMENSION, SUBSPACES);
+        trained.save(file);
+        ProductQuantizer loaded = ProductQuantizer.load(file);
+
+        assertEquals(DIMENSION, loaded.getDimension());
+        assertEquals(SUBSPACES, loaded.getCodeSize());
+        assertEquals(trained.getCentroidCount(), loaded.getCentroidCount());
+        for (float[] vector : vectors.subList(0, 20)) {
+            byte[] expected = new byte[SUBSPACES];
+            byte[] actual = new byte[SUBSPACES];
+            trained.encode(vector, 0, expected, 0);
+            loaded.encode(vector, 0, actual, 0);
+            assertArrayEquals(expected, actual);
+
+            float[] expectedTable = new float[trained.getTableSize()];
+            float[] actualTable = new float[loaded.getTableSize()];
+            trained.computeDistanceTable(vector, expectedTable);
+            loaded.computeDistanceTable(vector, actualTable);
+            assertArrayEquals(expectedTable, actualTable, 0f);
+        }
+    }
+
+    @Test
+    public void decodeMatchesDistanceTable() {
+        ProductQuantizer quantizer = ProductQuantizer.train(randomVectors(new Random(2), 300), DIMENSION, SUBSPACES);
+        List<float[]> vectors = randomVectors(new Random(3), 2);
+        float[] vector = vectors.get(0);
+        float[] query = vectors.get(1);
+        byte[] code = new byte[SUBSPACES];
+        quantizer.encode(vector, 0, code, 0);
+
+        // Сходство по таблице — это скалярное произведение с вектором, собранным из центроидов
+        float[] rebuilt = new float[DIMENSION];
+        quantizer.decode(code, 0, rebuilt, 0);
+        float[] table = new float[quantizer.getTableSize()];
+        quantizer.computeDistanceTable(query, table);
+        float expected = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            expected += query[i] * rebuilt[i];
+        }
+        float score = 0;
+        for (int m = 0; m < SUBSPACES; m++) {
+            score += table[m * quantizer.getCentroidCount() + (code[m] & 0xFF)];
+        }
+        assertEquals(expected, score, 1e-5f);
+    }
+
+    @Test
+    public void missingFileGivesNull() throws IOException {
+        file.delete();
+        assertNull(ProductQuantizer.load(file));
+    }
+
+    @Test
+    public void corruptedHeaderIsRejected() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x50514342); // "PQCB"
+            out.writeInt(1);
+            out.writeInt(DIMENSION);
+            out.writeInt(7); // 32 не делится на 7 подпространств
+            out.writeInt(256);
+        }
+        assertThrows(IOException.class, () -> ProductQuantizer.load(file));
+    }
+
+    @Test
+    public void wrongMagicIsRejected() throws IOException {
+        ProductQuantizer.train(randomVectors(new Random(4), 300), DIMENSION, SUBSPACES).save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0);
+        }
+        assertThrows(IOException.class, () -> ProductQuantizer.load(file));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        ProductQuantizer.train(randomVectors(new Random(5), 300), DIMENSION, SUBSPACES).save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        assertThrows(IOException.class, () -> ProductQuantizer.load(file));
+    }
+
+    static List<float[]> randomVectors(Random random, int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            float[] vector = new float[DIMENSION];
+            float sum = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = (float) random.nextGaussian();
+                sum += vector[i] * vector[i];
+            }
+            float norm = (float) Math.sqrt(sum);
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] /= norm;
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.smartscales.domain.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.Rect;
+
+import com.example.smartscales.domain.services.TrackIdentityCache.Status;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Переходы кэша трека: HIT, периодическая и внеочередная проверка, истечение и забывание
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TrackIdentityCacheTest {
+    private static final int TRACK = 5;
+    private static final int USER = 42;
+    private static final long FRAME_MS = 1000; // Реже TRACK_TIMEOUT_MS, чтобы трек не забывался
+
+    private final TrackIdentityCache cache = new TrackIdentityCache();
+    private final Rect bounds = new Rect(100, 100, 200, 200);
+
+    @Test
+    public void unknownTrackIsMiss() {
+        assertEquals(Status.MISS, cache.check(TRACK, bounds, 0));
+        assertNull(cache.getUserId(TRACK));
+    }
+
+    @Test
+    public void freshEntryIsHit() {
+        cache.put(TRACK, USER, bounds, 0);
+
+        assertEquals(Status.HIT, cache.check(TRACK, bounds, FRAME_MS));
+        assertEquals(Integer.valueOf(USER), cache.getUserId(TRACK));
+    }
+
+    @Test
+    public void verificationDueAfterInterval() {
+        cache.put(TRACK, USER, bounds, 0);
+        long now = followUntil(10_000);
+
+        now += FRAME_MS;
+        assertEquals(Status.VERIFY, cache.check(TRACK, bounds, now));
+        cache.confirm(TRACK, now);
+        assertEquals(Status.HIT, cache.check(TRACK, bounds, now + FRAME_MS));
+    }
+
+    @Test
+    public void centerJumpRequiresVerification() {
+        cache.put(TRACK, USER, bounds, 0);
+        Rect moved = new Rect(bounds);
+        moved.offset(60, 0); // Больше половины ширины рамки
+
+        assertEquals(Status.VERIFY, cache.check(TRACK, moved, FRAME_MS));
+        // Запрос проверки держится до confirm, даже если рамка больше не скачет
+        assertEquals(Status.VERIFY, cache.check(TRACK, moved, 2 * FRAME_MS));
+        cache.confirm(TRACK, 2 * FRAME_MS);
+        assertEquals(Status.HIT, cache.check(TRACK, moved, 3 * FRAME_MS));
+    }
+
+    @Test
+    public void sizeJumpRequiresVerification() {
+        cache.put(TRACK, USER, bounds, 0);
+
+        assertEquals(Status.VERIFY, cache.check(TRACK, new Rect(80, 80, 240, 240), FRAME_MS));
+    }
+
+    @Test
+    public void smallMotionStaysHit() {
+        cache.put(TRACK, USER, bounds, 0);
+        Rect moved = new Rect(bounds);
+        for (int frame = 1; frame <= 5; frame++) {
+            moved.offset(20, 10);
+            assertEquals(Status.HIT, cache.check(TRACK, moved, frame * FRAME_MS));
+        }
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() {
+        cache.put(TRACK, USER, bounds, 0);
+        long now = followUntil(60_000);
+
+        assertEquals(Status.EXPIRED, cache.check(TRACK, bounds, now + FRAME_MS));
+        assertNull(cache.getUserId(TRACK));
+        assertEquals(Status.MISS, cache.check(TRACK, bounds, now + 2 * FRAME_MS));
+    }
+
+    @Test
+    public void lostTrackIsForgotten() {
+        cache.put(TRACK, USER, bounds, 0);
+
+        assertEquals(Status.MISS, cache.check(TRACK, bounds, 3001));
+    }
+
+    /**
+     * Трек в кадре каждую секунду, проверки подтверждаются; возвращает время последнего кадра
+     */
+    private long followUntil(long end) {
+        long now = 0;
+        while (now + FRAME_MS <= end) {
+            now += FRAME_MS;
+            if (cache.check(TRACK, bounds, now) == Status.VERIFY) {
+                cache.confirm(TRACK, now);
+            }
+        }
+        return now;
+    }
+}
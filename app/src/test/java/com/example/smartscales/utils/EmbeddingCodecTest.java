@@ -0,0 +1,98 @@
+package com.example.smartscales.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Форматы users.faceEmbedding: распознавание float/int8 по длине и обратимость кодирования
+ */
+public class EmbeddingCodecTest {
+    private static final int DIMENSION = 128;
+
+    @Test
+    public void floatRoundTripIsExact() {
+        float[] embedding = randomVector(new Random(1));
+        byte[] blob = EmbeddingCodec.encodeFloat(embedding);
+
+        assertFalse(EmbeddingCodec.isInt8(blob));
+        assertEquals(DIMENSION * 4, blob.length);
+        assertEquals(DIMENSION, EmbeddingCodec.dimensionOf(blob));
+        assertArrayEquals(embedding, EmbeddingCodec.decode(blob), 0f);
+    }
+
+    @Test
+    public void int8RoundTripWithinHalfStep() {
+        float[] embedding = randomVector(new Random(2));
+        byte[] blob = EmbeddingCodec.encodeInt8(embedding);
+
+        assertTrue(EmbeddingCodec.isInt8(blob));
+        assertEquals(EmbeddingCodec.INT8_HEADER_SIZE + DIMENSION, blob.length);
+        assertEquals(DIMENSION, EmbeddingCodec.dimensionOf(blob));
+
+        float[] decoded = EmbeddingCodec.decode(blob);
+        float[] normalized = normalized(embedding);
+        float step = EmbeddingCodec.int8Scale(blob);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(normalized[i], decoded[i], step / 2 + 1e-6f);
+        }
+    }
+
+    @Test
+    public void floatBlobStartingWithTagIsNotInt8() {
+        float[] embedding = randomVector(new Random(3));
+        embedding[0] = Float.intBitsToFloat(EmbeddingCodec.INT8_TAG << 24);
+        byte[] blob = EmbeddingCodec.encodeFloat(embedding);
+
+        assertEquals(EmbeddingCodec.INT8_TAG, blob[0]);
+        assertFalse(EmbeddingCodec.isInt8(blob));
+        assertArrayEquals(embedding, EmbeddingCodec.decode(blob), 0f);
+    }
+
+    @Test
+    public void blobLengthsMatchEncoders() {
+        float[] embedding = randomVector(new Random(4));
+        int[] lengths = EmbeddingCodec.blobLengths(DIMENSION);
+        assertEquals(EmbeddingCodec.encodeFloat(embedding).length, lengths[0]);
+        assertEquals(EmbeddingCodec.encodeInt8(embedding).length, lengths[1]);
+    }
+
+    @Test
+    public void zeroVectorQuantizesToZeroScale() {
+        byte[] codes = {1, 2, 3, 4};
+        assertEquals(0f, EmbeddingCodec.quantize(new float[4], 0, 4, codes, 0), 0f);
+        assertArrayEquals(new byte[4], codes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeIntoRejectsSmallBuffer() {
+        byte[] blob = EmbeddingCodec.encodeFloat(randomVector(new Random(5)));
+        EmbeddingCodec.decodeInto(blob, new float[DIMENSION - 1]);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static float[] normalized(float[] vector) {
+        float sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        float norm = (float) Math.sqrt(sum);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] / norm;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.smartscales.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Matrix;
+
+import org.junit.Test;
+
+/**
+ * Подобие по точкам лица: шаблон переходит в себя с масштабом выхода,
+ * известные поворот, масштаб и сдвиг восстанавливаются точно
+ */
+public class FaceAlignerTest {
+    private static final int POINTS = FaceAligner.TEMPLATE.length;
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void templateMapsToScaledTemplate() {
+        float scale = 224f / FaceAligner.TEMPLATE_SIZE;
+        float[] src = template(1f);
+        float[] dst = template(scale);
+        float[] values = new float[9];
+
+        assertTrue(FaceAligner.solveSimilarity(src, dst, POINTS, values));
+        assertEquals(scale, values[Matrix.MSCALE_X], EPSILON);
+        assertEquals(scale, values[Matrix.MSCALE_Y], EPSILON);
+        assertEquals(0f, values[Matrix.MSKEW_X], EPSILON);
+        assertEquals(0f, values[Matrix.MSKEW_Y], EPSILON);
+        assertEquals(0f, values[Matrix.MTRANS_X], EPSILON);
+        assertEquals(0f, values[Matrix.MTRANS_Y], EPSILON);
+        assertEquals(1f, values[Matrix.MPERSP_2], 0f);
+    }
+
+    @Test
+    public void rotatedFaceIsMappedOntoTemplate() {
+        // Лицо в кадре: шаблон, повёрнутый на 20°, увеличенный в 1.7 раза и сдвинутый
+        double angle = Math.toRadians(20);
+        float scale = 1.7f;
+        float[] dst = template(1f);
+        float[] src = new float[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            float x = dst[i * 2];
+            float y = dst[i * 2 + 1];
+            src[i * 2] = (float) (scale * (x * Math.cos(angle) - y * Math.sin(angle))) + 300f;
+            src[i * 2 + 1] = (float) (scale * (x * Math.sin(angle) + y * Math.cos(angle))) + 120f;
+        }
+        float[] values = new float[9];
+
+        assertTrue(FaceAligner.solveSimilarity(src, dst, POINTS, values));
+        // Обратное преобразование: поворот на -20° и масштаб 1 / 1.7
+        assertEquals(Math.cos(-angle) / scale, values[Matrix.MSCALE_X], EPSILON);
+        assertEquals(Math.sin(-angle) / scale, values[Matrix.MSKEW_Y], EPSILON);
+        assertMapsOnto(values, src, dst, POINTS);
+    }
+
+    @Test
+    public void eyesAloneAreEnough() {
+        float[] dst = template(1f);
+        float[] src = {100f, 200f, 160f, 200f};
+        float[] values = new float[9];
+
+        assertTrue(FaceAligner.solveSimilarity(src, dst, 2, values));
+        assertMapsOnto(values, src, dst, 2);
+    }
+
+    @Test
+    public void coincidentPointsAreRejected() {
+        float[] src = {50f, 50f, 50f, 50f};
+        assertFalse(FaceAligner.solveSimilarity(src, template(1f), 2, new float[9]));
+    }
+
+    private static void assertMapsOnto(float[] values, float[] src, float[] dst, int count) {
+        for (int i = 0; i < count; i++) {
+            float x = src[i * 2];
+            float y = src[i * 2 + 1];
+            float mappedX = values[Matrix.MSCALE_X] * x + values[Matrix.MSKEW_X] * y + values[Matrix.MTRANS_X];
+            float mappedY = values[Matrix.MSKEW_Y] * x + values[Matrix.MSCALE_Y] * y + values[Matrix.MTRANS_Y];
+            assertEquals("x точки " + i, dst[i * 2], mappedX, 0.01f);
+            assertEquals("y точки " + i, dst[i * 2 + 1], mappedY, 0.01f);
+        }
+    }
+
+    private static float[] template(float scale) {
+        float[] points = new float[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            points[i * 2] = FaceAligner.TEMPLATE[i][0] * scale;
+            points[i * 2 + 1] = FaceAligner.TEMPLATE[i][1] * scale;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.smartscales.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стадия конвейера: при переполнении выбрасывается самый старый элемент, выброшенные
+ * и оставшиеся после shutdown отдаются DropListener, метрики считают всё это
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PipelineStageTest {
+    private static final int CAPACITY = 2;
+    private static final long TIMEOUT_S = 5;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Integer> processed = new CopyOnWriteArrayList<>();
+    private final List<Integer> dropped = new CopyOnWriteArrayList<>();
+    private PipelineStage<Integer> stage;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (stage != null) {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void overflowDropsOldest() throws InterruptedException {
+        stage = blockingStage();
+
+        stage.submit(0);
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        // Стадия занята элементом 0: очередь из двух, каждый следующий вытесняет старейший
+        for (int item = 1; item <= 4; item++) {
+            stage.submit(item);
+        }
+        assertEquals(Arrays.asList(1, 2), dropped);
+        assertEquals(CAPACITY, stage.getMetrics().queueDepth);
+
+        release.countDown();
+        awaitHandled(3);
+        assertEquals(Arrays.asList(0, 3, 4), processed);
+
+        PipelineStage.Metrics metrics = stage.getMetrics();
+        assertEquals(3, metrics.processed);
+        assertEquals(2, metrics.dropped);
+        assertEquals(0, metrics.failed);
+        assertEquals(0, metrics.queueDepth);
+    }
+
+    @Test
+    public void failedItemIsCountedAndStageContinues() throws InterruptedException {
+        stage = new PipelineStage<>("test", CAPACITY, item -> {
+            if (item == 0) {
+                throw new IllegalStateException("сбой");
+            }
+            processed.add(item);
+        }, dropped::add);
+
+        stage.submit(0);
+        stage.submit(1);
+        awaitHandled(2);
+
+        assertEquals(Collections.singletonList(1), processed);
+        assertEquals(1, stage.getMetrics().failed);
+        assertEquals(1, stage.getMetrics().processed);
+    }
+
+    @Test
+    public void shutdownHandsQueuedItemsToDropListener() throws InterruptedException {
+        stage = blockingStage();
+
+        stage.submit(0);
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        stage.submit(1);
+        stage.submit(2);
+        stage.shutdown();
+        assertEquals(Arrays.asList(1, 2), dropped);
+
+        // После остановки новые элементы сразу отдаются DropListener
+        stage.submit(3);
+        assertEquals(Arrays.asList(1, 2, 3), dropped);
+    }
+
+    /**
+     * Ждёт, пока стадия запишет метрики count элементов: они обновляются после handler
+     */
+    private void awaitHandled(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_S);
+        while (System.currentTimeMillis() < deadline) {
+            PipelineStage.Metrics metrics = stage.getMetrics();
+            if (metrics.processed + metrics.failed >= count) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Первый элемент держит поток стадии до release
+     */
+    private PipelineStage<Integer> blockingStage() {
+        return new PipelineStage<>("test", CAPACITY, item -> {
+            started.countDown();
+            release.await();
+            processed.add(item);
+        }, dropped::add);
+    }
+}